@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -17,12 +18,19 @@ import java.util.Set;
  * the course book and the lectures.
  * The graphs can be anything, such as a road map or a web link graph.
  * The graph can be read from a simple text file with one edge per line.
+ * The weights of edges can be changed afterwards with {@code setWeight}.
  */
 
 public class AdjacencyGraph implements DirectedGraph<String> {
 
     private final Map<String, List<DirectedEdge<String>>> adjacencyList;
 
+    // The incoming edges of every node, or null until they are needed.
+    private Map<String, List<DirectedEdge<String>>> incomingList = null;
+
+    // The number of nodes and edges that have been added, and weights that have been changed.
+    private long modifications = 0;
+
     /**
      * Creates a new empty graph.
      */
@@ -35,7 +43,10 @@ public class AdjacencyGraph implements DirectedGraph<String> {
      * @param n  the node
      */
     public void addNode(String n) {
-        adjacencyList.putIfAbsent(n, new LinkedList<>());
+        if (adjacencyList.putIfAbsent(n, new LinkedList<>()) == null)
+            modifications++;
+        if (incomingList != null)
+            incomingList.putIfAbsent(n, new LinkedList<>());
     }
 
     /**
@@ -47,6 +58,49 @@ public class AdjacencyGraph implements DirectedGraph<String> {
         addNode(e.from());
         addNode(e.to());
         adjacencyList.get(e.from()).add(e);
+        if (incomingList != null)
+            incomingList.get(e.to()).add(e);
+        modifications++;
+    }
+
+    /**
+     * Changes the weight of the edge from {@code from} to {@code to} (of all of them, if there are several).
+     * Note: searches must not run on the graph at the same time.
+     * @param  from    the starting node
+     * @param  to      the ending node
+     * @param  weight  the new weight
+     * @return the old weight
+     * @throws IllegalArgumentException if there is no such edge, or the new weight is negative
+     */
+    public double setWeight(String from, String to, double weight) {
+        DirectedEdge<String> updated = new DirectedEdge<>(from, to, weight);
+        double oldWeight = Double.NaN;
+        List<DirectedEdge<String>> edges = adjacencyList.get(from);
+        if (edges != null)
+            for (ListIterator<DirectedEdge<String>> it = edges.listIterator(); it.hasNext(); ) {
+                DirectedEdge<String> edge = it.next();
+                if (edge.to().equals(to)) {
+                    oldWeight = edge.weight();
+                    it.set(updated);
+                }
+            }
+        if (Double.isNaN(oldWeight))
+            throw new IllegalArgumentException("there is no edge from " + from + " to " + to);
+
+        if (incomingList != null)
+            for (ListIterator<DirectedEdge<String>> it = incomingList.get(to).listIterator(); it.hasNext(); )
+                if (it.next().from().equals(from))
+                    it.set(updated);
+        modifications++;
+        return oldWeight;
+    }
+
+    /**
+     * @return the number of times a node or an edge has been added, or a weight changed, since the graph was created
+     */
+    @Override
+    public long modifications() {
+        return modifications;
     }
 
     /**
@@ -80,6 +134,32 @@ public class AdjacencyGraph implements DirectedGraph<String> {
         return Collections.unmodifiableList(adjacencyList.get(n));
     }
 
+    @Override
+    public void forEachOutgoing(String n, EdgeConsumer<String> action) {
+        for (DirectedEdge<String> edge : adjacencyList.get(n))
+            action.accept(edge.to(), edge.weight());
+    }
+
+    /**
+     * Calls {@code action} with the source and weight of every edge that ends in node {@code n}.
+     * The incoming edges of all nodes are indexed the first time this is called.
+     * @param  n       a graph node
+     * @param  action  the callback
+     */
+    public void forEachIncoming(String n, EdgeConsumer<String> action) {
+        if (incomingList == null) {
+            Map<String, List<DirectedEdge<String>>> incoming = new HashMap<>();
+            for (String node : adjacencyList.keySet())
+                incoming.put(node, new LinkedList<>());
+            for (List<DirectedEdge<String>> edges : adjacencyList.values())
+                for (DirectedEdge<String> edge : edges)
+                    incoming.get(edge.to()).add(edge);
+            incomingList = incoming;
+        }
+        for (DirectedEdge<String> edge : incomingList.get(n))
+            action.accept(edge.from(), edge.weight());
+    }
+
     @Override
     public String parseNode(String n) {
         return n;
@@ -0,0 +1,199 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a batch of path queries against one graph, in parallel.
+ *
+ * The queries are read from a file with one query per line, "start TAB goal"
+ * (or "start goal" if the nodes contain no spaces); lines starting with "#" are skipped.
+ * All threads share the loaded graph and one PathFinder, which keep no per-search state.
+ * Unreachable goals are rejected with a ReachabilityIndex, for graphs that can enumerate their nodes.
+ * The results are written to standard output as CSV or JSON lines,
+ * in the same order as the queries, as soon as they are ready.
+ * Finally, percentiles of the search metrics are written to standard error.
+ */
+public class BatchPathFinder {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            System.err.println("Usage: java BatchPathFinder algorithm graphtype graph queryfile [threads | virtual] [csv | jsonl]");
+            System.err.println("  where algorithm = random | ucs | astar | wastar | arastar | hdastar | idastar | jps | jps+ | hpa | compact | bfs (jps and hpa only for GridGraph, compact only for NPuzzle, bfs only for unit weights)");
+            System.err.println("        graphtype = AdjacencyGraph | MappedGraph | WordLadder | NPuzzle | NPuzzle-PDB | GridGraph");
+            System.exit(1);
+        }
+        String algorithm = args[0], graphType = args[1], filePath = args[2], queryFile = args[3];
+        String threads = args.length > 4 ? args[4] : String.valueOf(Runtime.getRuntime().availableProcessors());
+        String format = args.length > 5 ? args[5] : "csv";
+        if (!format.equalsIgnoreCase("csv") && !format.equalsIgnoreCase("jsonl"))
+            throw new IllegalArgumentException("unknown output format " + format);
+
+        DirectedGraph<?> graph = RunPathFinder.loadGraph(graphType, filePath, algorithm);
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        ExecutorService executor = newExecutor(threads);
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(queryFile))) {
+            SearchMetrics.Summary summary = runBatch(graph, algorithm, in, executor, format.equalsIgnoreCase("jsonl"), out);
+            out.flush();
+            System.err.print(summary);
+        } finally {
+            executor.shutdown();
+            out.flush();
+        }
+    }
+
+    /**
+     * @return a fixed thread pool of the given size, or one virtual thread per task if {@code threads} is "virtual"
+     * (which needs Java 21 or later)
+     */
+    static ExecutorService newExecutor(String threads) {
+        if (threads.equalsIgnoreCase("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("virtual threads are not supported by this Java version");
+            }
+        }
+        return Executors.newFixedThreadPool(Integer.parseInt(threads));
+    }
+
+    /**
+     * Runs the queries read from {@code in} on the executor, and writes the results to {@code out} in input order.
+     * At most a few queries per thread are in flight at once, so huge query files are fine.
+     * @return percentile summaries of the metrics of all searches that were run
+     */
+    public static <Node> SearchMetrics.Summary runBatch(DirectedGraph<Node> graph, String algorithm, BufferedReader in,
+                                       ExecutorService executor, boolean json, PrintWriter out) throws IOException, InterruptedException {
+        PathFinder<Node> finder = new PathFinder<>(graph);
+        try {
+            finder.useReachabilityIndex(ReachabilityIndex.of(graph));
+        } catch (UnsupportedOperationException ignored) {
+            // The NPuzzle can't enumerate its nodes.
+        }
+        Set<Node> nodes = graph.nodes();
+        int window = 64 * Runtime.getRuntime().availableProcessors();
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        Queue<SearchMetrics> metrics = new ConcurrentLinkedQueue<>();
+
+        if (!json)
+            out.println("index,start,goal,success,cost,edges,iterations,elapsed,error");
+        int index = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank() || line.startsWith("#"))
+                continue;
+            String[] query = line.contains("\t") ? line.split("\t") : line.trim().split("\\s+");
+            int queryIndex = index++;
+            pending.add(executor.submit(() -> runQuery(graph, nodes, finder, algorithm, queryIndex, query, json, metrics)));
+            if (pending.size() >= window)
+                out.println(await(pending.remove()));
+        }
+        while (!pending.isEmpty())
+            out.println(await(pending.remove()));
+        return SearchMetrics.summarize(metrics);
+    }
+
+    private static String await(Future<String> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs one query, and formats its result (or the reason it failed) as a line of output.
+     * The metrics of the search are added to {@code metrics}.
+     */
+    private static <Node> String runQuery(DirectedGraph<Node> graph, Set<Node> nodes, PathFinder<Node> finder,
+                                          String algorithm, int index, String[] query, boolean json, Queue<SearchMetrics> metrics) {
+        String start = query[0].trim(), goal = query.length > 1 ? query[1].trim() : "";
+        try {
+            if (query.length != 2)
+                throw new IllegalArgumentException("a query should have a start and a goal");
+            Node startNode = graph.parseNode(start), goalNode = graph.parseNode(goal);
+            for (Node node : List.of(startNode, goalNode))
+                if (!nodes.contains(node))
+                    throw new IllegalArgumentException("node " + node + " does not belong to the graph");
+            PathFinder<Node>.Result result = finder.search(algorithm, startNode, goalNode);
+            metrics.add(result.metrics);
+            return format(index, start, goal, result, null, json);
+        } catch (RuntimeException e) {
+            return format(index, start, goal, null, describe(e), json);
+        }
+    }
+
+    /**
+     * @return the error text for a failed query: the message of a rejected query,
+     * and otherwise the exception class too, since many exceptions have no message
+     */
+    static String describe(RuntimeException e) {
+        if (e instanceof IllegalArgumentException && e.getMessage() != null)
+            return e.getMessage();
+        return e.toString();
+    }
+
+    static <Node> String format(int index, String start, String goal, PathFinder<Node>.Result result, String error, boolean json) {
+        boolean success = result != null && result.success;
+        String cost = success ? String.valueOf(result.cost) : "";
+        String edges = success && result.path != null ? String.valueOf(result.path.size()) : "";
+        String iterations = result != null ? String.valueOf(result.iterations) : "";
+        String elapsed = result != null ? String.valueOf(result.elapsedTime) : "";
+        if (!json)
+            return String.join(",", String.valueOf(index), csv(start), csv(goal), String.valueOf(success),
+                    cost, edges, iterations, elapsed, error == null ? "" : csv(error));
+
+        StringBuilder b = new StringBuilder();
+        b.append("{\"index\":").append(index)
+         .append(",\"start\":").append(json(start))
+         .append(",\"goal\":").append(json(goal))
+         .append(",\"success\":").append(success);
+        if (result != null)
+            b.append(",\"iterations\":").append(iterations).append(",\"elapsed\":").append(elapsed);
+        if (success) {
+            b.append(",\"cost\":").append(cost);
+            if (result.path != null)
+                b.append(",\"path\":[").append(json(result.start.toString()))
+                 .append(result.path.stream().map(e -> "," + json(e.to().toString())).collect(Collectors.joining()))
+                 .append("]");
+        }
+        if (error != null)
+            b.append(",\"error\":").append(json(error));
+        return b.append("}").toString();
+    }
+
+    private static String csv(String s) {
+        if (s.contains(",") || s.contains("\"") || s.contains("\n"))
+            return "\"" + s.replace("\"", "\"\"") + "\"";
+        return s;
+    }
+
+    static String json(String s) {
+        StringBuilder b = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\')
+                b.append('\\').append(c);
+            else if (c < 0x20)
+                b.append(String.format("\\u%04x", (int) c));
+            else
+                b.append(c);
+        }
+        return b.append('"').toString();
+    }
+
+}
@@ -0,0 +1,194 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Breadth-first search of the N-puzzle (for N <= 4) that keeps every state outside the Java heap,
+ * as a packed 64-bit key (see {@code NPuzzle.State.key}).
+ *
+ * All moves cost 1, so a breadth-first search finds the same path cost as uniform-cost search,
+ * and the goal can be recognised as soon as it is generated.
+ * The visited states are kept in a {@code PackedStateSet} together with the move that reached them,
+ * and the queue is a list of direct buffers, which are dropped as soon as the search has gone past them.
+ * So a search uses at most about 30 bytes per visited state, and puts no pressure on the garbage collector,
+ * whereas {@code PathFinder.searchUCS} needs a {@code State} object, a priority queue entry and a hash set entry for each of them.
+ */
+public class CompactPuzzleSearch {
+
+    // The code of the start state in the set of visited states.
+    private static final int START = 4;
+
+    private static final int BLOCK_SIZE = 1 << 20;    // the number of keys in each buffer of the queue
+
+    private final NPuzzle puzzle;
+    private final int N;
+    private final int[] delta;    // how the empty cell moves: right, left, down and up
+
+    /**
+     * The result of a search.
+     */
+    public static class Outcome {
+        public final List<NPuzzle.State> states;    // the states of the path, from the start to the goal; null if no path
+        public final long expansions;               // the number of states removed from the queue
+        public final long visited;                  // the number of states added to the visited set
+        public final long offHeapBytes;             // the largest amount of memory outside the heap used at once
+
+        Outcome(List<NPuzzle.State> states, long expansions, long visited, long offHeapBytes) {
+            this.states = states;
+            this.expansions = expansions;
+            this.visited = visited;
+            this.offHeapBytes = offHeapBytes;
+        }
+    }
+
+    /**
+     * A first-in first-out queue of keys in direct buffers.
+     */
+    private static class KeyQueue {
+        private final ArrayDeque<LongBuffer> blocks = new ArrayDeque<>();
+        private LongBuffer tail = null;
+        private long size = 0;
+
+        void add(long key) {
+            if (tail == null || !tail.hasRemaining()) {
+                tail = ByteBuffer.allocateDirect(BLOCK_SIZE * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+                blocks.add(tail.duplicate());
+            }
+            tail.put(key);
+            size++;
+        }
+
+        long remove() {
+            LongBuffer head = blocks.peekFirst();
+            long key = head.get();
+            if (!head.hasRemaining()) {
+                blocks.removeFirst();
+                if (blocks.isEmpty())
+                    tail = null;
+            }
+            size--;
+            return key;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long offHeapBytes() {
+            return (long) blocks.size() * BLOCK_SIZE * 8;
+        }
+    }
+
+    /**
+     * @param  puzzle  the puzzle
+     * @throws IllegalArgumentException if N > 4
+     */
+    public CompactPuzzleSearch(NPuzzle puzzle) {
+        if (puzzle.size() > 4)
+            throw new IllegalArgumentException("compact search only works on puzzles with N <= 4");
+        this.puzzle = puzzle;
+        this.N = puzzle.size();
+        this.delta = new int[] {1, -1, N, -N};
+    }
+
+    /**
+     * Searches for a shortest path from {@code start} to {@code goal}.
+     * If the goal is unreachable, all states reachable from the start are visited:
+     * half of the (N * N)! states, which is only feasible for N <= 3.
+     */
+    public Outcome search(NPuzzle.State start, NPuzzle.State goal) {
+        PackedStateSet visited = new PackedStateSet(1 << 16);
+        KeyQueue queue = new KeyQueue();
+        long goalKey = goal.key(), expansions = 0, offHeapBytes = 0;
+        visited.add(start.key(), START);
+        queue.add(entry(start.key(), START));
+        boolean found = start.equals(goal);
+
+        while (!found && !queue.isEmpty()) {
+            offHeapBytes = Math.max(offHeapBytes, visited.offHeapBytes() + queue.offHeapBytes());
+            // The queue holds the key with the move that reached it in its (redundant) top nibble,
+            // and the moves are done on the keys, so that expanding a state creates no objects.
+            long entry = queue.remove();
+            long key = puzzle.completeKey(entry);
+            int arrival = (int) (entry >>> 60) - 1;
+            expansions++;
+            int blank = puzzle.blankCell(key), x = blank % N, y = blank / N;
+            for (int d = 0; d < 4 && !found; d++) {
+                boolean inside = d == 0 ? x < N - 1 : d == 1 ? x > 0 : d == 2 ? y < N - 1 : y > 0;
+                // Undoing the move that reached this state would only find its parent again.
+                if (!inside || (arrival != START && d == (arrival ^ 1)))
+                    continue;
+                long next = NPuzzle.moveKey(key, blank, blank + delta[d]);
+                if (visited.add(next, d)) {
+                    queue.add(entry(next, d));
+                    found = next == goalKey;
+                }
+            }
+        }
+        offHeapBytes = Math.max(offHeapBytes, visited.offHeapBytes() + queue.offHeapBytes());
+        if (!found)
+            return new Outcome(null, expansions, visited.size(), offHeapBytes);
+
+        // Follow the moves back from the goal.
+        List<NPuzzle.State> states = new ArrayList<>();
+        NPuzzle.State state = goal;
+        states.add(state);
+        for (int move; (move = visited.move(state.key())) != START; states.add(state))
+            state = state.move(state.blankCell() - delta[move]);
+        Collections.reverse(states);
+        return new Outcome(states, expansions, visited.size(), offHeapBytes);
+    }
+
+    /**
+     * @return a queue entry: the lowest 60 bits of the key, and the move plus one in the top nibble
+     */
+    private static long entry(long key, int move) {
+        return (key & ((1L << 60) - 1)) | ((long) (move + 1) << 60);
+    }
+
+    /**
+     * Compares the compact search with uniform-cost search on random states,
+     * some moves away from the goal.
+     *
+     * Usage: java CompactPuzzleSearch N moves [queries]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java CompactPuzzleSearch N moves [queries]");
+            System.exit(1);
+        }
+        NPuzzle puzzle = new NPuzzle(Integer.parseInt(args[0]));
+        int moves = Integer.parseInt(args[1]);
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        CompactPuzzleSearch compact = new CompactPuzzleSearch(puzzle);
+        PathFinder<NPuzzle.State> finder = new PathFinder<>(puzzle);
+        Random random = new Random(0);
+        for (int q = 0; q < queries; q++) {
+            NPuzzle.State start = puzzle.goalState();
+            for (int i = 0; i < moves; i++) {
+                List<DirectedEdge<NPuzzle.State>> edges = puzzle.outgoingEdges(start);
+                start = edges.get(random.nextInt(edges.size())).to();
+            }
+            System.gc();
+            long startTime = System.nanoTime();
+            Outcome outcome = compact.search(start, puzzle.goalState());
+            System.out.printf("%s: compact search found cost %d in %.3f s, %d states visited, %.1f MiB off the heap%n",
+                    start, outcome.states.size() - 1, (System.nanoTime() - startTime) / 1e9, outcome.visited, outcome.offHeapBytes / 1048576.0);
+            System.gc();
+            startTime = System.nanoTime();
+            try {
+                PathFinder<NPuzzle.State>.Result result = finder.searchUCS(start, puzzle.goalState());
+                System.out.printf("%s: UCS found cost %.0f in %.3f s, %d iterations%n",
+                        start, result.cost, (System.nanoTime() - startTime) / 1e9, result.iterations);
+            } catch (OutOfMemoryError e) {
+                System.out.printf("%s: UCS ran out of heap after %.3f s%n", start, (System.nanoTime() - startTime) / 1e9);
+            }
+        }
+    }
+
+}
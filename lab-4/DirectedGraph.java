@@ -23,6 +23,26 @@ public interface DirectedGraph<Node> {
      */
     List<DirectedEdge<Node>> outgoingEdges(Node n);
 
+    /**
+     * A callback for the outgoing edges of a node, see {@code forEachOutgoing}.
+     */
+    @FunctionalInterface
+    interface EdgeConsumer<Node> {
+        void accept(Node to, double weight);
+    }
+
+    /**
+     * Calls {@code action} with the target and weight of every edge that originates from node {@code n}.
+     * This is the same as going through {@code outgoingEdges(n)}, but graphs can implement it
+     * without creating a list and edge objects.
+     * @param  n       a graph node
+     * @param  action  the callback
+     */
+    default void forEachOutgoing(Node n, EdgeConsumer<Node> action) {
+        for (DirectedEdge<Node> edge : outgoingEdges(n))
+            action.accept(edge.to(), edge.weight());
+    }
+
     /**
      * @return the number of nodes in this graph
      * (warning: may be expensive to compute)
@@ -39,6 +59,16 @@ public interface DirectedGraph<Node> {
         return nodes().stream().mapToInt(n -> outgoingEdges(n).size()).sum();
     }
 
+    /**
+     * @return a count that changes whenever the nodes, edges or weights of this graph change,
+     * so that data computed from the graph can tell that it is out of date
+     *
+     * The default is 0, for graphs that can't be modified.
+     */
+    default long modifications() {
+        return 0;
+    }
+
     /**
      * @param  n  one node
      * @param  m  another node
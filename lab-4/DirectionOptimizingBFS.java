@@ -0,0 +1,335 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Breadth-first search for graphs where every edge has weight 1, like the Wikipedia graph and word ladders.
+ * There the distances are just the BFS levels, so no priority queue is needed.
+ *
+ * The search goes level by level over the node numbers of an {@code IndexedGraph},
+ * and keeps the current level (the frontier) and the visited nodes as bitsets.
+ * Each level is expanded in one of two directions (Beamer, Asanovic and Patterson, "Direction-optimizing breadth-first search"):
+ * - top-down: follow the outgoing edges of the frontier nodes, which is cheap while the frontier is small,
+ * - bottom-up: let every unvisited node look for an incoming edge from the frontier, and stop at the first one found,
+ *   which is cheaper when the frontier is large, since most edges are never looked at.
+ * The search switches to bottom-up when the frontier has more than 1/ALPHA of the edges of the unvisited nodes,
+ * and back when the frontier has less than 1/BETA of the nodes.
+ * The nodes of a level are expanded in parallel on the common fork-join pool, in chunks of 4096 nodes.
+ *
+ * Point-to-point queries search from both ends at once (from the goal backwards over the reversed graph),
+ * always expanding the side whose frontier has fewer edges, until the two searches meet.
+ */
+public class DirectionOptimizingBFS<Node> {
+
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    private static final int CHUNK_WORDS = 64;     // the number of bitset words per parallel task
+
+    private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final IndexedGraph<Node> forward;
+    private final IndexedGraph<Node> backward;
+    private final int n;
+    private final int words;
+
+    /**
+     * The result of a point-to-point query.
+     */
+    public class Path {
+        public final List<Node> nodes;     // the nodes of a shortest path, from the start to the goal; null if no path
+        public final int visited;          // the number of nodes reached by the two searches together
+        public final String directions;    // the direction of every level: 'T' for top-down and 'B' for bottom-up (lower case for the backward search)
+
+        Path(List<Node> nodes, int visited, String directions) {
+            this.nodes = nodes;
+            this.visited = visited;
+            this.directions = directions;
+        }
+    }
+
+    /**
+     * The state of one search: which nodes it has reached, and how.
+     */
+    private class Side {
+        final IndexedGraph<Node> out;    // the edges that the search follows
+        final IndexedGraph<Node> in;     // the same edges, reversed
+        final long[] visited = new long[words];
+        long[] frontier = new long[words];
+        final int[] parent = new int[n];
+        final int[] depth = new int[n];
+        int level = 0;
+        long frontierNodes = 1, frontierEdges, unvisitedEdges;   // the statistics that decide the direction
+        boolean bottomUp = false;
+        final StringBuilder directions = new StringBuilder();
+        int reached = 1;
+
+        Side(IndexedGraph<Node> out, IndexedGraph<Node> in, int source) {
+            this.out = out;
+            this.in = in;
+            Arrays.fill(parent, -1);
+            Arrays.fill(depth, -1);
+            set(visited, source);
+            set(frontier, source);
+            depth[source] = 0;
+            frontierEdges = out.endEdge(source) - out.firstEdge(source);
+            unvisitedEdges = in.numEdges() - (in.endEdge(source) - in.firstEdge(source));
+        }
+
+        /**
+         * Expands the frontier by one level.
+         * @return true if the new frontier is not empty
+         */
+        boolean step() {
+            if (!bottomUp && frontierEdges > unvisitedEdges / ALPHA)
+                bottomUp = true;
+            else if (bottomUp && frontierNodes < n / BETA)
+                bottomUp = false;
+            directions.append(bottomUp ? 'B' : 'T');
+
+            long[] next = new long[words];
+            LongAdder nodes = new LongAdder(), outEdges = new LongAdder(), inEdges = new LongAdder();
+            IntStream.range(0, (words + CHUNK_WORDS - 1) / CHUNK_WORDS).parallel().forEach(chunk -> {
+                int found = 0;
+                long foundOut = 0, foundIn = 0;
+                for (int i = chunk * CHUNK_WORDS; i < Math.min(words, (chunk + 1) * CHUNK_WORDS); i++) {
+                    if (bottomUp) {
+                        // This task owns the words of its chunk, so it can write them without synchronisation.
+                        for (long bits = ~visited[i]; bits != 0; bits &= bits - 1) {
+                            int w = (i << 6) + Long.numberOfTrailingZeros(bits);
+                            if (w >= n)
+                                break;
+                            for (int e = in.firstEdge(w); e < in.endEdge(w); e++) {
+                                int v = in.target(e);
+                                if (get(frontier, v)) {
+                                    parent[w] = v;
+                                    depth[w] = level + 1;
+                                    visited[i] |= 1L << w;
+                                    next[i] |= 1L << w;
+                                    found++;
+                                    foundOut += out.endEdge(w) - out.firstEdge(w);
+                                    foundIn += in.endEdge(w) - in.firstEdge(w);
+                                    break;
+                                }
+                            }
+                        }
+                    } else {
+                        // Other tasks may reach the same nodes, so the first one to set the visited bit wins.
+                        for (long bits = frontier[i]; bits != 0; bits &= bits - 1) {
+                            int v = (i << 6) + Long.numberOfTrailingZeros(bits);
+                            for (int e = out.firstEdge(v); e < out.endEdge(v); e++) {
+                                int w = out.target(e);
+                                if (!getOpaque(visited, w) && setAtomic(visited, w)) {
+                                    parent[w] = v;
+                                    depth[w] = level + 1;
+                                    setAtomic(next, w);
+                                    found++;
+                                    foundOut += out.endEdge(w) - out.firstEdge(w);
+                                    foundIn += in.endEdge(w) - in.firstEdge(w);
+                                }
+                            }
+                        }
+                    }
+                }
+                nodes.add(found);
+                outEdges.add(foundOut);
+                inEdges.add(foundIn);
+            });
+            frontier = next;
+            level++;
+            frontierNodes = nodes.sum();
+            frontierEdges = outEdges.sum();
+            unvisitedEdges -= inEdges.sum();
+            reached += (int) frontierNodes;
+            return frontierNodes > 0;
+        }
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static boolean getOpaque(long[] bits, int i) {
+        return ((long) BITS.getOpaque(bits, i >>> 6) & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * @return true if this call set the bit, false if it was already set
+     */
+    private static boolean setAtomic(long[] bits, int i) {
+        return ((long) BITS.getAndBitwiseOr(bits, i >>> 6, 1L << i) & (1L << i)) == 0;
+    }
+
+    /**
+     * Prepares the search of a graph.
+     * @param graph  the graph, which must be able to enumerate its nodes
+     * @throws IllegalArgumentException if some edge does not have weight 1
+     */
+    public DirectionOptimizingBFS(DirectedGraph<Node> graph) {
+        this(IndexedGraph.of(graph));
+    }
+
+    /**
+     * Prepares the search of a graph.
+     * @param graph  the graph
+     * @throws IllegalArgumentException if some edge does not have weight 1
+     */
+    public DirectionOptimizingBFS(IndexedGraph<Node> graph) {
+        for (int e = 0; e < graph.numEdges(); e++)
+            if (graph.weight(e) != 1)
+                throw new IllegalArgumentException("breadth-first search only works if every edge has weight 1");
+        this.forward = graph;
+        this.backward = graph.reverse();
+        this.n = graph.numNodes();
+        this.words = (n + 63) / 64;
+    }
+
+    /**
+     * @return the indexed graph, whose node numbers are used by the trees
+     */
+    public IndexedGraph<Node> graph() {
+        return forward;
+    }
+
+    private int id(Node node) {
+        int id = forward.id(node);
+        if (id < 0)
+            throw new IllegalArgumentException("node " + node + " does not belong to the graph");
+        return id;
+    }
+
+    /**
+     * @return the breadth-first tree of all nodes reachable from the source
+     */
+    public ShortestPaths.Tree tree(Node source) {
+        Side side = new Side(forward, backward, id(source));
+        while (side.step())
+            ;
+        // Settle the nodes level by level, like Dijkstra's algorithm would.
+        int[] first = new int[side.level + 2];    // the number of reached nodes closer than each depth
+        for (int v = 0; v < n; v++)
+            if (side.depth[v] >= 0)
+                first[side.depth[v] + 1]++;
+        for (int d = 1; d < first.length; d++)
+            first[d] += first[d - 1];
+        int[] order = new int[side.reached];
+        double[] distance = new double[n];
+        for (int v = 0; v < n; v++) {
+            distance[v] = side.depth[v] < 0 ? Double.POSITIVE_INFINITY : side.depth[v];
+            if (side.depth[v] >= 0)
+                order[first[side.depth[v]]++] = v;
+        }
+        return new ShortestPaths.Tree(id(source), distance, side.parent, order);
+    }
+
+    /**
+     * Searches for a shortest path from {@code start} to {@code goal}, from both ends at once.
+     */
+    public Path search(Node start, Node goal) {
+        int s = id(start), t = id(goal);
+        if (s == t)
+            return new Path(List.of(start), 1, "");
+        Side from = new Side(forward, backward, s), to = new Side(backward, forward, t);
+        while (true) {
+            Side side = from.frontierEdges <= to.frontierEdges ? from : to, other = side == from ? to : from;
+            if (!side.step())
+                return new Path(null, from.reached + to.reached, directions(from, to));
+
+            // Every node in the new frontier is at the same distance from its side, so take the one closest to the other side.
+            int meet = -1;
+            for (int i = 0; i < words; i++)
+                for (long bits = side.frontier[i] & other.visited[i]; bits != 0; bits &= bits - 1) {
+                    int w = (i << 6) + Long.numberOfTrailingZeros(bits);
+                    if (meet < 0 || other.depth[w] < other.depth[meet])
+                        meet = w;
+                }
+            if (meet < 0)
+                continue;
+
+            List<Node> nodes = new ArrayList<>();
+            for (int v = meet; v >= 0; v = from.parent[v])
+                nodes.add(forward.node(v));
+            Collections.reverse(nodes);
+            for (int v = to.parent[meet]; v >= 0; v = to.parent[v])
+                nodes.add(forward.node(v));
+            return new Path(nodes, from.reached + to.reached, directions(from, to));
+        }
+    }
+
+    private String directions(Side from, Side to) {
+        return from.directions + "/" + to.directions.toString().toLowerCase();
+    }
+
+    /**
+     * Compares breadth-first search with Dijkstra's algorithm and UCS on a unit-weight graph:
+     * full trees from some sources, and point-to-point queries between random nodes.
+     *
+     * Usage: java DirectionOptimizingBFS AdjacencyGraph|WordLadder graphfile [queries]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java DirectionOptimizingBFS AdjacencyGraph|WordLadder graphfile [queries]");
+            System.exit(1);
+        }
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        run(RunPathFinder.loadGraph(args[0], args[1], "ucs"), queries);
+    }
+
+    private static <Node> void run(DirectedGraph<Node> graph, int queries) {
+        long startTime = System.nanoTime();
+        DirectionOptimizingBFS<Node> bfs = new DirectionOptimizingBFS<>(graph);
+        System.out.printf("%d nodes, %d edges, prepared in %.3f ms%n",
+                bfs.n, bfs.forward.numEdges(), (System.nanoTime() - startTime) / 1e6);
+
+        List<Node> nodes = new ArrayList<>(bfs.forward.nodeList());
+        Collections.shuffle(nodes, new Random(0));
+        ShortestPaths<Node> dijkstra = new ShortestPaths<>(bfs.forward);
+        long bfsNanos = 0, dijkstraNanos = 0;
+        // The first round only warms up the JIT compiler.
+        for (int round = 0; round < 2; round++) {
+            bfsNanos = dijkstraNanos = 0;
+            for (Node source : nodes.subList(0, Math.min(queries, nodes.size()))) {
+                startTime = System.nanoTime();
+                ShortestPaths.Tree tree = bfs.tree(source);
+                bfsNanos += System.nanoTime() - startTime;
+                startTime = System.nanoTime();
+                ShortestPaths.Tree expected = dijkstra.tree(bfs.forward.id(source));
+                dijkstraNanos += System.nanoTime() - startTime;
+                if (!Arrays.equals(tree.distance, expected.distance))
+                    throw new IllegalStateException("wrong distances from " + source);
+            }
+        }
+        System.out.printf("Full trees: BFS %.3f ms, Dijkstra %.3f ms%n", bfsNanos / 1e6, dijkstraNanos / 1e6);
+
+        PathFinder<Node> finder = new PathFinder<>(graph);
+        Random random = new Random(0);
+        long ucsNanos = 0, ucsVisited = 0, bfsVisited = 0;
+        bfsNanos = 0;
+        for (int q = 0; q < queries; q++) {
+            Node start = nodes.get(random.nextInt(nodes.size())), goal = nodes.get(random.nextInt(nodes.size()));
+            startTime = System.nanoTime();
+            DirectionOptimizingBFS<Node>.Path path = bfs.search(start, goal);
+            bfsNanos += System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            PathFinder<Node>.Result expected = finder.searchUCS(start, goal);
+            ucsNanos += System.nanoTime() - startTime;
+            bfsVisited += path.visited;
+            ucsVisited += expected.metrics.visited;
+            if ((path.nodes != null) != expected.success || (path.nodes != null && path.nodes.size() - 1 != expected.cost))
+                throw new IllegalStateException("wrong path from " + start + " to " + goal);
+        }
+        System.out.printf("%d queries: bidirectional BFS %.3f ms (%d nodes visited), UCS %.3f ms (%d nodes visited)%n",
+                queries, bfsNanos / 1e6, bfsVisited, ucsNanos / 1e6, ucsVisited);
+    }
+
+}
@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Breadth-first search of the N-puzzle (for N <= 4) whose layers are kept on disk,
+ * for state spaces that don't fit in memory (Korf's frontier search with delayed duplicate detection).
+ *
+ * Each layer is a file of sorted, distinct packed states (see {@code NPuzzle.State.key}).
+ * The next layer is made in two passes:
+ * - the successors of the current layer are collected in a buffer, which is sorted and written to a run file whenever it is full,
+ * - the runs are merged, and the states that are also in the current or the previous layer are dropped.
+ * Every move can be undone, so a successor that was seen before is in one of these two layers,
+ * and older layers are deleted. Duplicates are thus detected by sequential reads only, long after the states were generated.
+ *
+ * After each layer, a checkpoint file records the progress, so that an interrupted search can be resumed
+ * by running it again with the same directory, start and goal.
+ *
+ * The search only finds the depth of the goal, not a path, since the layers before the last two are gone.
+ */
+public class ExternalPuzzleSearch {
+
+    public static final int DEFAULT_RUN_SIZE = 1 << 22;     // the number of states in memory at once (32 MiB)
+
+    private static final int IO_BUFFER_SIZE = 1 << 20;      // the buffer size of the layers
+    private static final int RUN_BUFFER_SIZE = 1 << 16;     // the buffer size of each run while merging
+    private static final String CHECKPOINT = "checkpoint.properties";
+
+    private final NPuzzle puzzle;
+    private final int N;
+    private final Path directory;
+    private final int runSize;
+
+    private long bytesRead = 0, bytesWritten = 0, ioNanos = 0;
+
+    /**
+     * The statistics of one layer.
+     */
+    public static class Layer {
+        public final int depth;
+        public final long size;             // the number of states at this depth
+        public final int runs;              // the number of sorted runs that were merged
+        public final long bytesRead;
+        public final long bytesWritten;
+        public final double ioSeconds;      // the time spent reading and writing
+        public final double seconds;        // the total time of the layer
+
+        Layer(int depth, long size, int runs, long bytesRead, long bytesWritten, double ioSeconds, double seconds) {
+            this.depth = depth;
+            this.size = size;
+            this.runs = runs;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.ioSeconds = ioSeconds;
+            this.seconds = seconds;
+        }
+
+        /**
+         * @return the number of bytes read and written per second of I/O time, in MiB
+         */
+        public double throughput() {
+            return ioSeconds == 0 ? 0 : (bytesRead + bytesWritten) / 1048576.0 / ioSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth %3d: %,15d states, %4d runs, %,10.1f MiB read, %,10.1f MiB written, %.1f MiB/s of I/O, %.3f s",
+                    depth, size, runs, bytesRead / 1048576.0, bytesWritten / 1048576.0, throughput(), seconds);
+        }
+    }
+
+    /**
+     * The result of a search.
+     */
+    public static class Outcome {
+        public final int goalDepth;             // the cost of the shortest path to the goal, or -1 if it was not found
+        public final List<Long> layerSizes;     // the number of states at each depth, including those before a resumed search
+        public final int resumedDepth;          // the depth the search was resumed from, or -1 if it started from scratch
+
+        Outcome(int goalDepth, List<Long> layerSizes, int resumedDepth) {
+            this.goalDepth = goalDepth;
+            this.layerSizes = layerSizes;
+            this.resumedDepth = resumedDepth;
+        }
+    }
+
+    /**
+     * A buffered sequential writer of keys.
+     */
+    private class KeyWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        long count = 0;
+
+        KeyWriter(Path file, int bufferSize) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void write(long key) throws IOException {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.putLong(key);
+            count++;
+        }
+
+        private void flush() throws IOException {
+            long startTime = System.nanoTime();
+            buffer.flip();
+            while (buffer.hasRemaining())
+                bytesWritten += channel.write(buffer);
+            buffer.clear();
+            ioNanos += System.nanoTime() - startTime;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * A buffered sequential reader of keys, which can look at the next key without reading it.
+     */
+    private class KeyReader implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean hasNext;
+        private long next;
+
+        KeyReader(Path file, int bufferSize) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            buffer.flip();
+            advance();
+        }
+
+        private void advance() throws IOException {
+            if (buffer.remaining() < 8) {
+                long startTime = System.nanoTime();
+                buffer.compact();
+                while (buffer.position() < 8) {
+                    int read = channel.read(buffer);
+                    if (read < 0)
+                        break;
+                    bytesRead += read;
+                }
+                buffer.flip();
+                ioNanos += System.nanoTime() - startTime;
+            }
+            hasNext = buffer.remaining() >= 8;
+            if (hasNext)
+                next = buffer.getLong();
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        long peek() {
+            return next;
+        }
+
+        long next() throws IOException {
+            long key = next;
+            advance();
+            return key;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * @param  puzzle     the puzzle
+     * @param  directory  where to keep the layers and the checkpoint
+     * @param  runSize    the number of states to sort in memory at once
+     * @throws IllegalArgumentException if N > 4
+     */
+    public ExternalPuzzleSearch(NPuzzle puzzle, Path directory, int runSize) {
+        if (puzzle.size() > 4)
+            throw new IllegalArgumentException("external search only works on puzzles with N <= 4");
+        this.puzzle = puzzle;
+        this.N = puzzle.size();
+        this.directory = directory;
+        this.runSize = runSize;
+    }
+
+    private Path layerFile(int depth) {
+        return directory.resolve(String.format("layer-%03d.keys", depth));
+    }
+
+    private Path runFile(int run) {
+        return directory.resolve(String.format("run-%05d.tmp", run));
+    }
+
+    /**
+     * Searches breadth-first from {@code start} until the goal is found, the layers run out, or {@code maxDepth} is reached.
+     * If the directory has a checkpoint of a search with the same start and goal, that search is continued.
+     * @param  start     the start state
+     * @param  goal      the goal state, or null to enumerate all states reachable from the start
+     * @param  maxDepth  the last depth to compute
+     * @param  onLayer   called with the statistics of each new layer
+     */
+    public Outcome search(NPuzzle.State start, NPuzzle.State goal, int maxDepth, Consumer<Layer> onLayer) throws IOException {
+        Files.createDirectories(directory);
+        String goalKey = goal == null ? "" : Long.toHexString(goal.key());
+        List<Long> sizes = new ArrayList<>();
+        int resumedDepth = -1;
+
+        Properties checkpoint = readCheckpoint();
+        if (checkpoint != null && checkpoint.getProperty("n").equals(String.valueOf(N))
+                && checkpoint.getProperty("start").equals(Long.toHexString(start.key())) && checkpoint.getProperty("goal").equals(goalKey)) {
+            for (String size : checkpoint.getProperty("sizes").split(","))
+                sizes.add(Long.parseLong(size));
+            resumedDepth = sizes.size() - 1;
+            int goalDepth = Integer.parseInt(checkpoint.getProperty("goalDepth"));
+            if (goalDepth >= 0)
+                return new Outcome(goalDepth, sizes, resumedDepth);
+            // The search may have stopped before it deleted the oldest layer.
+            if (resumedDepth >= 2)
+                Files.deleteIfExists(layerFile(resumedDepth - 2));
+        } else {
+            long startTime = System.nanoTime();
+            try (KeyWriter writer = new KeyWriter(layerFile(0), IO_BUFFER_SIZE)) {
+                writer.write(start.key());
+            }
+            sizes.add(1L);
+            if (goal != null && goal.equals(start))
+                return new Outcome(0, sizes, resumedDepth);
+            writeCheckpoint(start, goalKey, sizes, -1);
+            onLayer.accept(new Layer(0, 1, 0, 0, bytesWritten, ioNanos / 1e9, (System.nanoTime() - startTime) / 1e9));
+        }
+
+        for (int depth = sizes.size() - 1; depth < maxDepth && sizes.get(depth) > 0; depth++) {
+            long readBefore = bytesRead, writtenBefore = bytesWritten, ioBefore = ioNanos, startTime = System.nanoTime();
+            int runs = writeRuns(depth);
+            long[] found = {0};
+            long size = mergeRuns(depth, runs, goal == null ? 0 : goal.key(), goal != null, found);
+            sizes.add(size);
+            int goalDepth = found[0] > 0 ? depth + 1 : -1;
+            writeCheckpoint(start, goalKey, sizes, goalDepth);
+            if (depth > 0)
+                Files.deleteIfExists(layerFile(depth - 1));
+            onLayer.accept(new Layer(depth + 1, size, runs, bytesRead - readBefore, bytesWritten - writtenBefore,
+                    (ioNanos - ioBefore) / 1e9, (System.nanoTime() - startTime) / 1e9));
+            if (goalDepth >= 0)
+                return new Outcome(goalDepth, sizes, resumedDepth);
+        }
+        return new Outcome(-1, sizes, resumedDepth);
+    }
+
+    /**
+     * Expands every state of the layer, and writes its successors to sorted runs without duplicates.
+     * @return the number of runs
+     */
+    private int writeRuns(int depth) throws IOException {
+        long[] buffer = new long[runSize];
+        int used = 0, runs = 0;
+        try (KeyReader reader = new KeyReader(layerFile(depth), IO_BUFFER_SIZE)) {
+            while (reader.hasNext()) {
+                // The moves are done on the packed keys, so that expanding a state creates no objects.
+                long key = reader.next();
+                int blank = puzzle.blankCell(key), x = blank % N, y = blank / N;
+                if (used + 4 > runSize) {
+                    writeRun(buffer, used, runs++);
+                    used = 0;
+                }
+                if (x < N - 1)
+                    buffer[used++] = NPuzzle.moveKey(key, blank, blank + 1);
+                if (x > 0)
+                    buffer[used++] = NPuzzle.moveKey(key, blank, blank - 1);
+                if (y < N - 1)
+                    buffer[used++] = NPuzzle.moveKey(key, blank, blank + N);
+                if (y > 0)
+                    buffer[used++] = NPuzzle.moveKey(key, blank, blank - N);
+            }
+        }
+        if (used > 0)
+            writeRun(buffer, used, runs++);
+        return runs;
+    }
+
+    private void writeRun(long[] buffer, int length, int run) throws IOException {
+        Arrays.sort(buffer, 0, length);
+        try (KeyWriter writer = new KeyWriter(runFile(run), IO_BUFFER_SIZE)) {
+            for (int i = 0; i < length; i++)
+                if (i == 0 || buffer[i] != buffer[i - 1])
+                    writer.write(buffer[i]);
+        }
+    }
+
+    /**
+     * Merges the runs into the next layer, leaving out the states of the current and previous layers.
+     * @param  found  its first element is set to 1 if the goal is in the next layer
+     * @return the size of the next layer
+     */
+    private long mergeRuns(int depth, int runs, long goalKey, boolean hasGoal, long[] found) throws IOException {
+        List<KeyReader> readers = new ArrayList<>();
+        try (KeyWriter writer = new KeyWriter(layerFile(depth + 1), IO_BUFFER_SIZE);
+             KeyReader current = new KeyReader(layerFile(depth), IO_BUFFER_SIZE);
+             KeyReader previous = depth > 0 ? new KeyReader(layerFile(depth - 1), IO_BUFFER_SIZE) : null) {
+            PriorityQueue<KeyReader> queue = new PriorityQueue<>((r1, r2) -> Long.compare(r1.peek(), r2.peek()));
+            for (int run = 0; run < runs; run++) {
+                KeyReader reader = new KeyReader(runFile(run), RUN_BUFFER_SIZE);
+                readers.add(reader);
+                if (reader.hasNext())
+                    queue.add(reader);
+            }
+            boolean hasLast = false;
+            long last = 0;
+            while (!queue.isEmpty()) {
+                KeyReader reader = queue.remove();
+                long key = reader.next();
+                if (reader.hasNext())
+                    queue.add(reader);
+                if (hasLast && key == last)
+                    continue;
+                hasLast = true;
+                last = key;
+                if (contains(current, key) || (previous != null && contains(previous, key)))
+                    continue;
+                writer.write(key);
+                if (hasGoal && key == goalKey)
+                    found[0] = 1;
+            }
+            return writer.count;
+        } finally {
+            for (KeyReader reader : readers)
+                reader.close();
+            for (int run = 0; run < runs; run++)
+                Files.deleteIfExists(runFile(run));
+        }
+    }
+
+    /**
+     * @return true if the sorted layer contains the key, skipping all smaller keys
+     * (the keys must be asked for in increasing order)
+     */
+    private static boolean contains(KeyReader layer, long key) throws IOException {
+        while (layer.hasNext() && layer.peek() < key)
+            layer.next();
+        return layer.hasNext() && layer.peek() == key;
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file))
+            return null;
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            checkpoint.load(reader);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file first, so that it is replaced in one step.
+     */
+    private void writeCheckpoint(NPuzzle.State start, String goalKey, List<Long> sizes, int goalDepth) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("n", String.valueOf(N));
+        checkpoint.setProperty("start", Long.toHexString(start.key()));
+        checkpoint.setProperty("goal", goalKey);
+        checkpoint.setProperty("sizes", sizes.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        checkpoint.setProperty("goalDepth", String.valueOf(goalDepth));
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            checkpoint.store(writer, "ExternalPuzzleSearch from " + start);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Runs a breadth-first search on disk, printing the statistics of each layer.
+     * Without a goal, it enumerates all states reachable from the start (by default the goal state).
+     * Running it again with the same arguments resumes an interrupted search.
+     *
+     * Usage: java ExternalPuzzleSearch N directory [maxDepth [start [goal]]]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ExternalPuzzleSearch N directory [maxDepth [start [goal]]]");
+            System.exit(1);
+        }
+        NPuzzle puzzle = new NPuzzle(Integer.parseInt(args[0]));
+        int maxDepth = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+        NPuzzle.State start = args.length > 3 ? puzzle.parseNode(args[3]) : puzzle.goalState();
+        NPuzzle.State goal = args.length > 4 ? puzzle.parseNode(args[4]) : null;
+
+        long startTime = System.nanoTime();
+        ExternalPuzzleSearch search = new ExternalPuzzleSearch(puzzle, Paths.get(args[1]), DEFAULT_RUN_SIZE);
+        Outcome outcome = search.search(start, goal, maxDepth, System.out::println);
+        if (outcome.resumedDepth >= 0)
+            System.out.println("Resumed from depth " + outcome.resumedDepth);
+        System.out.printf("%d layers, %,d states in total, in %.3f s%n", outcome.layerSizes.size(),
+                outcome.layerSizes.stream().mapToLong(Long::longValue).sum(), (System.nanoTime() - startTime) / 1e9);
+        if (goal != null)
+            System.out.println(outcome.goalDepth >= 0 ? "Cost of path from " + start + " to " + goal + ": " + outcome.goalDepth
+                    : "No path found from " + start + " to " + goal);
+    }
+
+}
@@ -3,12 +3,13 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -22,6 +23,7 @@ import java.util.stream.Stream;
  * You can move from each point to the eight point around it.
  * The edge costs are 1.0 (for up/down/left/right) and sqrt(2) (for diagonal movement).
  * The graph can be read from a simple ASCII art text file.
+ * Cells can be blocked and unblocked afterwards with {@code setPassable}.
  */
 
 public class GridGraph implements DirectedGraph<Point> {
@@ -30,6 +32,25 @@ public class GridGraph implements DirectedGraph<Point> {
     private final int width;
     private final int height;
 
+    // The packed representation, computed when the map is loaded.
+    // Cells are addressed by the index y * width + x.
+    private final long[] passableBits;     // bit i is set if cell i is passable
+    private final byte[] neighbourMask;    // bit d of neighbourMask[i] is set if the neighbour of cell i in directions[d] is passable
+    private final int[] cellOffsets;       // the index difference of a step in each of the directions
+    private final Point[] points;          // the point of each cell, created the first time it is needed
+
+    // The number of cells that have been blocked or unblocked, and callbacks for them.
+    private long modifications = 0;
+    private final List<IntConsumer> changeListeners = new ArrayList<>();
+
+    // The JPS+ tables of this grid, computed by the first search that needs them, see {@code JumpPointSearch.of}.
+    // They are kept here rather than in a static map, so that they are collected together with the grid.
+    JumpPointSearch jumpPointsPlus = null;
+
+    // The HPA* abstraction of this grid with the default cluster size, see {@code HierarchicalGrid.of}.
+    // It keeps itself up to date through a change listener.
+    HierarchicalGrid hierarchy = null;
+
     // Characters from Moving AI Lab:
     //   . - passable terrain
     //   G - passable terrain
@@ -54,6 +75,18 @@ public class GridGraph implements DirectedGraph<Point> {
             )
         ).toArray(Point[]::new);
 
+    // The cost of a step in each of the directions.
+    private static final double[] directionCosts =
+        Arrays.stream(directions).mapToDouble(Point::euclideanNorm).toArray();
+
+    /**
+     * A callback for the neighbours of a cell, see {@code forEachNeighbour}.
+     */
+    @FunctionalInterface
+    public interface NeighbourConsumer {
+        void accept(int cell, double weight);
+    }
+
     /**
      * Creates a new graph with edges from a text file.
      * The file describes the graph as ASCII art,
@@ -70,6 +103,24 @@ public class GridGraph implements DirectedGraph<Point> {
         for (char[] row : grid)
             if (row.length != width)
                 throw new IllegalArgumentException("Malformed grid, row widths don't match.");
+
+        passableBits = new long[(width * height + 63) / 64];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                if (passableChars.indexOf(grid[y][x]) >= 0)
+                    passableBits[index(x, y) >>> 6] |= 1L << index(x, y);
+
+        cellOffsets = Arrays.stream(directions).mapToInt(dir -> dir.y * width + dir.x).toArray();
+        points = new Point[width * height];
+        neighbourMask = new byte[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int mask = 0;
+                for (int d = 0; d < directions.length; d++)
+                    if (passable(x + directions[d].x, y + directions[d].y))
+                        mask |= 1 << d;
+                neighbourMask[index(x, y)] = (byte) mask;
+            }
     }
 
     /**
@@ -89,19 +140,118 @@ public class GridGraph implements DirectedGraph<Point> {
     /**
      * @return true if you're allowed to pass through the point {@code <x,y>}
      */
+    public boolean passable(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height && passable(index(x, y));
+    }
+
+    /**
+     * @return true if you're allowed to pass through the cell with index {@code cell}
+     */
+    public boolean passable(int cell) {
+        return (passableBits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return the index of the cell {@code <x,y>}
+     */
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * @return the point of the cell with index {@code cell}
+     */
+    public Point point(int cell) {
+        // Points are immutable, so threads that race to create the same one get equal points.
+        Point p = points[cell];
+        if (p == null)
+            points[cell] = p = new Point(cell % width, cell / width);
+        return p;
+    }
+
+    /**
+     * Calls {@code action} for every passable neighbour of the cell with index {@code cell},
+     * with the index of the neighbour and the cost of the step.
+     * Unlike {@code outgoingEdges}, this allocates nothing.
+     * @param  cell    the index of a passable cell
+     * @param  action  the callback
+     */
+    public void forEachNeighbour(int cell, NeighbourConsumer action) {
+        int mask = neighbourMask[cell] & 0xFF;
+        while (mask != 0) {
+            int d = Integer.numberOfTrailingZeros(mask);
+            action.accept(cell + cellOffsets[d], directionCosts[d]);
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * @return the passable neighbours of the cell with index {@code cell}, as a bitmask over the eight directions
+     */
+    public int neighbourMask(int cell) {
+        return neighbourMask[cell] & 0xFF;
+    }
+
+    /**
+     * Blocks or unblocks the point {@code <x,y>}, and updates the neighbour masks of the cells around it.
+     * Blocked cells are shown as '@', unblocked ones as '.'.
+     * Note: searches must not run on the graph at the same time.
+     * @param  x         the x-coordinate
+     * @param  y         the y-coordinate
+     * @param  passable  true to unblock the point, false to block it
+     * @throws IllegalArgumentException if the point is outside the grid
+     */
+    public void setPassable(int x, int y, boolean passable) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new IllegalArgumentException("<" + x + "," + y + "> is outside the grid");
+        int cell = index(x, y);
+        if (passable(cell) == passable)
+            return;
+        passableBits[cell >>> 6] ^= 1L << cell;
+        grid[y][x] = passable ? '.' : '@';
+        // The direction from a neighbour back to this cell is the opposite one, which is directions[7 - d].
+        for (int d = 0; d < directions.length; d++) {
+            int nx = x + directions[d].x, ny = y + directions[d].y;
+            if (nx >= 0 && ny >= 0 && nx < width && ny < height)
+                neighbourMask[index(nx, ny)] ^= 1 << (directions.length - 1 - d);
+        }
+        modifications++;
+        // The JPS+ tables assume the old obstacles.
+        jumpPointsPlus = null;
+        for (IntConsumer listener : changeListeners)
+            listener.accept(cell);
+    }
+
+    /**
+     * @return the number of times a cell has been blocked or unblocked since the grid was loaded
+     */
+    @Override
+    public long modifications() {
+        return modifications;
+    }
+
+    /**
+     * Makes {@code setPassable} call {@code listener} with the index of every cell it changes,
+     * so that precomputed data about the grid can be updated.
+     * @param  listener  the callback
+     */
+    public void addChangeListener(IntConsumer listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @return true if you're allowed to pass through the point {@code p}
+     */
     private boolean passable(Point p) {
-        return p.x >= 0 && p.y >= 0 && p.x < width && p.y < height && passableChars.indexOf(grid[p.y][p.x]) >= 0;
+        return passable(p.x, p.y);
     }
 
     @Override
     public Set<Point> nodes() {
         HashSet<Point> nodes = new HashSet<>();
-        for (int y = 0; y < height; y++)
-            for (int x = 0; x < width; x++) {
-                Point p = new Point(x, y);
-                if (passable(p))
-                    nodes.add(p);
-            }
+        for (int cell = 0; cell < width * height; cell++)
+            if (passable(cell))
+                nodes.add(point(cell));
         return nodes;
     }
 
@@ -111,14 +261,35 @@ public class GridGraph implements DirectedGraph<Point> {
      */
     @Override
     public List<DirectedEdge<Point>> outgoingEdges(Point p) {
-        // We consider all directions,
-        return Arrays.stream(directions)
-            // compute the edge in that direction,
-            .map(dir -> new DirectedEdge<>(p, p.add(dir), dir.euclideanNorm()))
-            // keep the ones with passable target,
-            .filter(edge -> passable(edge.to()))
-            // and return them as a list.
-            .collect(Collectors.toList());
+        List<DirectedEdge<Point>> edges = new ArrayList<>(directions.length);
+        forEachOutgoing(p, (q, weight) -> edges.add(new DirectedEdge<>(p, q, weight)));
+        return edges;
+    }
+
+    @Override
+    public void forEachOutgoing(Point p, EdgeConsumer<Point> action) {
+        if (p.x < 0 || p.y < 0 || p.x >= width || p.y >= height)
+            return;
+        // The neighbour mask tells us which directions have a passable target.
+        // This is forEachNeighbour without the lambda, so that expanding a point allocates nothing.
+        int cell = index(p.x, p.y);
+        int mask = neighbourMask[cell] & 0xFF;
+        while (mask != 0) {
+            int d = Integer.numberOfTrailingZeros(mask);
+            action.accept(point(cell + cellOffsets[d]), directionCosts[d]);
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * Calls {@code action} with the source and weight of every edge that ends in point {@code p}.
+     * The edges of a grid go both ways, so these are the passable neighbours, but blocked points have none.
+     * @param  p       a graph node (point)
+     * @param  action  the callback
+     */
+    public void forEachIncoming(Point p, EdgeConsumer<Point> action) {
+        if (passable(p))
+            forEachOutgoing(p, action);
     }
 
     /**
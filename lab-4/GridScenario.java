@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark scenarios for grid maps, in the .scen format of the Moving AI Lab.
+ *
+ * A scenario file starts with a line "version 1", followed by one query per line:
+ * "bucket TAB map TAB width TAB height TAB start-x TAB start-y TAB goal-x TAB goal-y TAB optimal-length".
+ * The bucket groups queries of similar length, usually {@code (int) (optimal / 4)}.
+ *
+ * Note that the reference lengths of the Moving AI Lab do not allow cutting corners,
+ * but GridGraph does. So with those scenarios, our paths can be shorter than the reference,
+ * but never longer.
+ */
+public class GridScenario {
+
+    /**
+     * One query of a scenario.
+     */
+    public static class Query {
+        public final int bucket;
+        public final String map;
+        public final int width, height;
+        public final Point start, goal;
+        public final double optimal;
+
+        public Query(int bucket, String map, int width, int height, Point start, Point goal, double optimal) {
+            this.bucket = bucket;
+            this.map = map;
+            this.width = width;
+            this.height = height;
+            this.start = start;
+            this.goal = goal;
+            this.optimal = optimal;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d\t%s\t%d\t%d\t%d\t%d\t%d\t%d\t%.8f",
+                    bucket, map, width, height, start.x, start.y, goal.x, goal.y, optimal);
+        }
+    }
+
+    /**
+     * Reads a scenario file.
+     * @param file  path to a .scen file
+     * @throws IllegalArgumentException if the file is malformed
+     */
+    public static List<Query> load(String file) throws IOException {
+        List<Query> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            if (line.isBlank() || line.startsWith("version"))
+                continue;
+            String[] fields = line.trim().split(line.contains("\t") ? "\t" : "\\s+");
+            if (fields.length != 9)
+                throw new IllegalArgumentException("malformed scenario line: " + line);
+            try {
+                queries.add(new Query(Integer.parseInt(fields[0]), fields[1],
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                        new Point(Integer.parseInt(fields[4]), Integer.parseInt(fields[5])),
+                        new Point(Integer.parseInt(fields[6]), Integer.parseInt(fields[7])),
+                        Double.parseDouble(fields[8])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("malformed scenario line: " + line);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Writes a scenario file.
+     */
+    public static void write(List<Query> queries, String file) throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(Paths.get(file)))) {
+            w.println("version 1");
+            for (Query query : queries)
+                w.println(query);
+        }
+    }
+
+    /**
+     * Generates random queries between passable points in the same connected component,
+     * and computes their optimal lengths with A*.
+     * @param grid     the map
+     * @param mapName  the name of the map, to put in the queries
+     * @param count    the number of queries
+     * @param seed     the seed of the random choices, so that the queries can be reproduced
+     * @return the queries, sorted by bucket
+     * @throws IllegalArgumentException if no connected component has two passable cells
+     */
+    public static List<Query> generate(GridGraph grid, String mapName, int count, long seed) {
+        int[] component = ReachabilityIndex.gridComponents(grid);
+        int[] passable = IntStream.range(0, grid.width() * grid.height()).filter(grid::passable).toArray();
+        if (passable.length == 0)
+            throw new IllegalArgumentException("the map has no passable cells");
+        // Otherwise no pair of cells would ever be accepted below.
+        int[] sizes = new int[grid.width() * grid.height()];
+        boolean connected = false;
+        for (int i = 0; i < passable.length && !connected; i++)
+            connected = ++sizes[component[passable[i]]] >= 2;
+        if (!connected)
+            throw new IllegalArgumentException("no two passable cells of the map are connected");
+
+        Random random = new Random(seed);
+        PathFinder<Point> finder = new PathFinder<>(grid);
+        List<Query> queries = new ArrayList<>();
+        while (queries.size() < count) {
+            int start = passable[random.nextInt(passable.length)];
+            int goal = passable[random.nextInt(passable.length)];
+            if (start == goal || component[start] != component[goal])
+                continue;
+            PathFinder<Point>.Result result = finder.searchAstar(grid.point(start), grid.point(goal));
+            queries.add(new Query((int) (result.cost / 4), mapName, grid.width(), grid.height(),
+                    grid.point(start), grid.point(goal), result.cost));
+        }
+        queries.sort((q1, q2) -> Integer.compare(q1.bucket, q2.bucket));
+        return queries;
+    }
+
+    /**
+     * Runs the queries with the given algorithm, checks the costs against the reference lengths,
+     * and prints the throughput and the latency per bucket.
+     * @return the number of queries whose path was longer than the reference, or not found
+     */
+    public static int run(GridGraph grid, List<Query> queries, String algorithm, PrintWriter out) {
+        for (Query query : queries)
+            if (query.width != grid.width() || query.height != grid.height())
+                throw new IllegalArgumentException("the scenario is for a " + query.width + "x" + query.height + " map, not "
+                        + grid.width() + "x" + grid.height());
+
+        PathFinder<Point> finder = new PathFinder<>(grid);
+        TreeMap<Integer, List<SearchMetrics>> byBucket = new TreeMap<>();
+        TreeMap<Integer, int[]> checks = new TreeMap<>();     // bucket -> {optimal, shorter, worse}
+        long startTime = System.nanoTime();
+        for (Query query : queries) {
+            PathFinder<Point>.Result result = finder.search(algorithm, query.start, query.goal);
+            byBucket.computeIfAbsent(query.bucket, b -> new ArrayList<>()).add(result.metrics);
+            int[] check = checks.computeIfAbsent(query.bucket, b -> new int[3]);
+            // The reference lengths are rounded to 8 decimals.
+            double tolerance = 1e-6 * Math.max(1, query.optimal);
+            if (!result.success || result.cost > query.optimal + tolerance)
+                check[2]++;
+            else if (result.cost < query.optimal - tolerance)
+                check[1]++;
+            else
+                check[0]++;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        out.printf("%-8s %8s %8s %8s %8s %12s %12s %12s%n", "bucket", "queries", "optimal", "shorter", "worse", "mean (ms)", "p50 (ms)", "p99 (ms)");
+        int worse = 0;
+        for (int bucket : byBucket.keySet()) {
+            List<SearchMetrics> metrics = byBucket.get(bucket);
+            SearchMetrics.Summary summary = SearchMetrics.summarize(metrics);
+            double mean = metrics.stream().mapToLong(m -> m.elapsedNanos).average().orElse(0) / 1e6;
+            int[] check = checks.get(bucket);
+            out.printf("%-8d %8d %8d %8d %8d %12.3f %12.3f %12.3f%n", bucket, metrics.size(), check[0], check[1], check[2],
+                    mean, summary.elapsedNanos(50) / 1e6, summary.elapsedNanos(99) / 1e6);
+            worse += check[2];
+        }
+        out.printf("%d queries in %.3fs: %.1f queries/s%n", queries.size(), seconds, queries.size() / seconds);
+        if (worse > 0)
+            out.println("WARNING: " + worse + " paths were longer than the reference, or not found");
+        out.flush();
+        return worse;
+    }
+
+    /**
+     * Runs a scenario file on a map, or generates random queries for the map.
+     * Generated queries are saved to a scenario file if one is given.
+     *
+     * Usage: java GridScenario algorithm mapfile scenfile
+     *        java GridScenario algorithm mapfile count [seed] [output scenfile]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java GridScenario algorithm mapfile scenfile");
+            System.err.println("       java GridScenario algorithm mapfile count [seed] [output scenfile]");
+            System.err.println("  where algorithm = ucs | astar | idastar | jps | jps+ | hpa");
+            System.exit(1);
+        }
+        String algorithm = args[0];
+        GridGraph grid = new GridGraph(args[1]);
+        List<Query> queries;
+        if (args[2].matches("\\d+")) {
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            queries = generate(grid, Paths.get(args[1]).getFileName().toString(), Integer.parseInt(args[2]), seed);
+            if (args.length > 4)
+                write(queries, args[4]);
+        } else
+            queries = load(args[2]);
+
+        int worse = run(grid, queries, algorithm, new PrintWriter(System.out));
+        if (worse > 0)
+            System.exit(2);
+    }
+
+}
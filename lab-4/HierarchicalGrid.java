@@ -0,0 +1,533 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/**
+ * Hierarchical path-finding A* (HPA*, Botea, Mueller and Schaeffer) on a GridGraph.
+ *
+ * The map is divided into square clusters. Where two neighbouring clusters share a run of cells
+ * that are passable on both sides of their border, there is an entrance: one pair of cells in the middle
+ * of a short run, or two pairs at the ends of a long one. Diagonal steps past corners, which GridGraph allows,
+ * get entrances of their own. The entrance cells are the nodes of a small abstract graph,
+ * with an edge across each entrance, and edges between the entrances of each cluster,
+ * whose costs are the shortest distances inside the cluster.
+ *
+ * A query connects the start and the goal to the entrances of their clusters, and runs A* on the abstract graph.
+ * The abstract path is then refined into cells on demand, by searching inside one cluster at a time.
+ * This expands far fewer nodes than A* on the whole map, but the paths are not always optimal,
+ * since they must go through the entrances (typically a few percent longer).
+ *
+ * When cells are blocked or unblocked with {@code GridGraph.setPassable}, only the cluster of the cell is built again,
+ * and the neighbouring clusters if the cell is on their border, before the next query.
+ */
+public class HierarchicalGrid {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    // A run of open border cells at least this long gets two entrances, one at each end.
+    private static final int LONG_ENTRANCE = 6;
+    private static final double SQRT2 = Math.sqrt(2);
+
+    private final GridGraph grid;
+    private final int width;
+    private final int height;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;
+    private final TreeSet<Integer> dirty = new TreeSet<>();    // the clusters to build again before the next query
+    private long builds = 0;
+
+    /**
+     * The abstract nodes of one cluster.
+     */
+    private static class Cluster {
+        final int[] cells;           // the entrance cells
+        final int[][] partners;      // partners[i] are the cells in other clusters that are entered from cells[i]
+        final double[][] distance;   // distance[i][j] is the cost of the shortest path from cells[i] to cells[j] inside the cluster
+
+        Cluster(int[] cells, int[][] partners, double[][] distance) {
+            this.cells = cells;
+            this.partners = partners;
+            this.distance = distance;
+        }
+
+        int indexOf(int cell) {
+            for (int i = 0; i < cells.length; i++)
+                if (cells[i] == cell)
+                    return i;
+            return -1;
+        }
+    }
+
+    /**
+     * The result of a hierarchical search.
+     */
+    public class Path {
+        public final List<Point> abstractPoints;   // the start, the entrances passed through and the goal; null if no path
+        public final double abstractCost;          // the cost of the abstract path, which is also the cost of the refined path
+        public final int expansions;               // the number of abstract nodes expanded, plus the cells expanded
+                                                   // to connect the start and the goal to their clusters
+        private List<Point> points = null;
+
+        Path(List<Point> abstractPoints, double abstractCost, int expansions) {
+            this.abstractPoints = abstractPoints;
+            this.abstractCost = abstractCost;
+            this.expansions = expansions;
+        }
+
+        /**
+         * @return every point of the path, found by searching inside the clusters between the abstract points
+         * (the first call does the refinement); null if there is no path
+         * @throws IllegalStateException if the grid has changed so that the path cannot be refined
+         */
+        public synchronized List<Point> points() {
+            if (points == null && abstractPoints != null) {
+                List<Point> refined = new ArrayList<>();
+                refined.add(abstractPoints.get(0));
+                for (int i = 1; i < abstractPoints.size(); i++) {
+                    Point from = abstractPoints.get(i - 1), to = abstractPoints.get(i);
+                    int fromCell = grid.index(from.x, from.y), toCell = grid.index(to.x, to.y);
+                    if (clusterOf(fromCell) != clusterOf(toCell))
+                        refined.add(to);
+                    else
+                        for (int cell : refine(clusterOf(fromCell), fromCell, toCell))
+                            refined.add(grid.point(cell));
+                }
+                points = refined;
+            }
+            return points;
+        }
+    }
+
+    /**
+     * Builds the abstraction of a grid, and keeps it up to date when the grid changes.
+     * @param grid         the grid
+     * @param clusterSize  the width and height of the clusters
+     */
+    public HierarchicalGrid(GridGraph grid, int clusterSize) {
+        if (clusterSize < 2)
+            throw new IllegalArgumentException("the cluster size must be at least 2");
+        this.grid = grid;
+        this.width = grid.width();
+        this.height = grid.height();
+        this.clusterSize = clusterSize;
+        this.clustersX = (width + clusterSize - 1) / clusterSize;
+        this.clustersY = (height + clusterSize - 1) / clusterSize;
+        this.clusters = new Cluster[clustersX * clustersY];
+        for (int c = 0; c < clusters.length; c++)
+            clusters[c] = build(c);
+        grid.addChangeListener(this::cellChanged);
+    }
+
+    /**
+     * @return the abstraction of the given grid with the default cluster size, reusing it if possible
+     * (it is stored in the grid itself)
+     */
+    public static HierarchicalGrid of(GridGraph grid) {
+        synchronized (grid) {
+            if (grid.hierarchy == null)
+                grid.hierarchy = new HierarchicalGrid(grid, DEFAULT_CLUSTER_SIZE);
+            return grid.hierarchy;
+        }
+    }
+
+    private int clusterOf(int cell) {
+        return (cell / width / clusterSize) * clustersX + (cell % width) / clusterSize;
+    }
+
+    /**
+     * @return the index of a cell among the cells of its cluster
+     */
+    private int local(int cell) {
+        return (cell / width % clusterSize) * clusterSize + cell % width % clusterSize;
+    }
+
+    private static double octile(int dx, int dy) {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+
+    /**
+     * Marks the clusters that depend on a changed cell: its own, and the ones whose border or corner it is on,
+     * which are the clusters of the cells around it.
+     */
+    private synchronized void cellChanged(int cell) {
+        int x = cell % width, y = cell / width;
+        for (int dx = -1; dx <= 1; dx++)
+            for (int dy = -1; dy <= 1; dy++)
+                if (x + dx >= 0 && y + dy >= 0 && x + dx < width && y + dy < height)
+                    dirty.add(clusterOf(grid.index(x + dx, y + dy)));
+    }
+
+    private synchronized void rebuildDirty() {
+        for (int c : dirty)
+            clusters[c] = build(c);
+        dirty.clear();
+    }
+
+    /**
+     * Finds the entrances on the border between cluster {@code <cx,cy>} and its neighbour to the east or to the south.
+     * Runs of positions where both sides are passable get one or two straight entrances.
+     * Since the grid allows diagonal moves past corners, a diagonal step across the border
+     * that is not between two positions of the same run also gets an entrance.
+     * @param out  where to add the entrances, as pairs of a cell in {@code <cx,cy>} and a cell in the neighbour
+     */
+    private void borderEntrances(int cx, int cy, boolean east, List<int[]> out) {
+        int length = east ? Math.min(clusterSize, height - cy * clusterSize) : Math.min(clusterSize, width - cx * clusterSize);
+        boolean[] open = new boolean[length];
+        for (int i = 0; i < length; i++)
+            open[i] = grid.passable(borderCell(cx, cy, east, i, false)) && grid.passable(borderCell(cx, cy, east, i, true));
+
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && open[i] && runStart < 0)
+                runStart = i;
+            if ((i == length || !open[i]) && runStart >= 0) {
+                int runLength = i - runStart;
+                if (runLength < LONG_ENTRANCE)
+                    out.add(new int[] {borderCell(cx, cy, east, runStart + runLength / 2, false), borderCell(cx, cy, east, runStart + runLength / 2, true)});
+                else {
+                    out.add(new int[] {borderCell(cx, cy, east, runStart, false), borderCell(cx, cy, east, runStart, true)});
+                    out.add(new int[] {borderCell(cx, cy, east, i - 1, false), borderCell(cx, cy, east, i - 1, true)});
+                }
+                runStart = -1;
+            }
+        }
+
+        for (int i = 0; i < length; i++)
+            for (int j = i - 1; j <= i + 1; j += 2)
+                if (j >= 0 && j < length && !(open[i] && open[j])
+                        && grid.passable(borderCell(cx, cy, east, i, false)) && grid.passable(borderCell(cx, cy, east, j, true)))
+                    out.add(new int[] {borderCell(cx, cy, east, i, false), borderCell(cx, cy, east, j, true)});
+    }
+
+    /**
+     * @return the cell at position {@code i} along the east or south border of cluster {@code <cx,cy>},
+     * on the inside, or on the outside (in the neighbouring cluster)
+     */
+    private int borderCell(int cx, int cy, boolean east, int i, boolean outside) {
+        int d = outside ? 1 : 0;
+        return east ? grid.index((cx + 1) * clusterSize - 1 + d, cy * clusterSize + i)
+                    : grid.index(cx * clusterSize + i, (cy + 1) * clusterSize - 1 + d);
+    }
+
+    /**
+     * Finds the diagonal step between the corners of cluster {@code <cx,cy>} and its neighbour
+     * to the south-east (or to the north-east), if both corners are passable.
+     * @param out  where to add the entrance, as a pair of a cell in {@code <cx,cy>} and a cell in the neighbour
+     */
+    private void cornerEntrance(int cx, int cy, boolean southEast, List<int[]> out) {
+        int x = (cx + 1) * clusterSize - 1;
+        int y = southEast ? (cy + 1) * clusterSize - 1 : cy * clusterSize;
+        int dy = southEast ? 1 : -1;
+        if (grid.passable(x, y) && grid.passable(x + 1, y + dy))
+            out.add(new int[] {grid.index(x, y), grid.index(x + 1, y + dy)});
+    }
+
+    /**
+     * Finds the entrances of a cluster on all four borders and corners, and the distances between them.
+     */
+    private Cluster build(int c) {
+        builds++;
+        int cx = c % clustersX, cy = c / clustersX;
+        boolean east = cx < clustersX - 1, west = cx > 0, south = cy < clustersY - 1, north = cy > 0;
+        List<int[]> inside = new ArrayList<>(), outside = new ArrayList<>();
+        if (east)
+            borderEntrances(cx, cy, true, inside);
+        if (south)
+            borderEntrances(cx, cy, false, inside);
+        if (east && south)
+            cornerEntrance(cx, cy, true, inside);
+        if (east && north)
+            cornerEntrance(cx, cy, false, inside);
+        if (west)
+            borderEntrances(cx - 1, cy, true, outside);
+        if (north)
+            borderEntrances(cx, cy - 1, false, outside);
+        if (west && north)
+            cornerEntrance(cx - 1, cy - 1, true, outside);
+        if (west && south)
+            cornerEntrance(cx - 1, cy + 1, false, outside);
+
+        // A cell can be an entrance on two borders, or for several steps across a border.
+        Map<Integer, List<Integer>> entrances = new LinkedHashMap<>();
+        for (int[] pair : inside)
+            entrances.computeIfAbsent(pair[0], e -> new ArrayList<>()).add(pair[1]);
+        for (int[] pair : outside)
+            entrances.computeIfAbsent(pair[1], e -> new ArrayList<>()).add(pair[0]);
+
+        int k = entrances.size();
+        int[] cells = new int[k];
+        int[][] partners = new int[k][];
+        int i = 0;
+        for (Map.Entry<Integer, List<Integer>> entrance : entrances.entrySet()) {
+            cells[i] = entrance.getKey();
+            partners[i] = entrance.getValue().stream().mapToInt(Integer::intValue).toArray();
+            i++;
+        }
+        double[][] distance = new double[k][k];
+        for (i = 0; i < k; i++) {
+            double[] fromEntrance = distances(c, cells[i], null);
+            for (int j = 0; j < k; j++)
+                distance[i][j] = fromEntrance[local(cells[j])];
+        }
+        return new Cluster(cells, partners, distance);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a cell, without leaving its cluster.
+     * @param expansions  a counter to add the number of expanded cells to, or null
+     * @return the distances to the cells of the cluster, indexed by {@code local}
+     */
+    private double[] distances(int c, int from, int[] expansions) {
+        double[] distance = new double[clusterSize * clusterSize];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        IndexMinPQ pqueue = new IndexMinPQ(distance.length);
+        distance[local(from)] = 0;
+        pqueue.insertOrDecrease(local(from), 0);
+        int x0 = c % clustersX * clusterSize, y0 = c / clustersX * clusterSize;
+        while (!pqueue.isEmpty()) {
+            int u = pqueue.delMin();
+            if (expansions != null)
+                expansions[0]++;
+            double cost = distance[u];
+            grid.forEachNeighbour((y0 + u / clusterSize) * width + x0 + u % clusterSize, (next, weight) -> {
+                if (clusterOf(next) != c)
+                    return;
+                int v = local(next);
+                if (cost + weight < distance[v]) {
+                    distance[v] = cost + weight;
+                    pqueue.insertOrDecrease(v, cost + weight);
+                }
+            });
+        }
+        return distance;
+    }
+
+    /**
+     * Runs A* between two cells of a cluster, without leaving it.
+     * @return the cells after {@code from}, up to and including {@code to}
+     */
+    private List<Integer> refine(int c, int from, int to) {
+        int n = clusterSize * clusterSize;
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        int[] parent = new int[n];
+        IndexMinPQ pqueue = new IndexMinPQ(n);
+        int tx = to % width, ty = to / width;
+        distance[local(from)] = 0;
+        parent[local(from)] = from;
+        pqueue.insertOrDecrease(local(from), 0);
+        int x0 = c % clustersX * clusterSize, y0 = c / clustersX * clusterSize;
+        while (!pqueue.isEmpty()) {
+            int u = pqueue.delMin();
+            int cell = (y0 + u / clusterSize) * width + x0 + u % clusterSize;
+            if (cell == to) {
+                List<Integer> cells = new ArrayList<>();
+                for (int p = cell; p != from; p = parent[local(p)])
+                    cells.add(p);
+                Collections.reverse(cells);
+                return cells;
+            }
+            double cost = distance[u];
+            grid.forEachNeighbour(cell, (next, weight) -> {
+                if (clusterOf(next) != c)
+                    return;
+                int v = local(next);
+                if (cost + weight < distance[v]) {
+                    distance[v] = cost + weight;
+                    parent[v] = cell;
+                    pqueue.insertOrDecrease(v, cost + weight + octile(next % width - tx, next / width - ty));
+                }
+            });
+        }
+        throw new IllegalStateException("no path from " + grid.point(from) + " to " + grid.point(to)
+                + " inside its cluster, the grid has changed since the search");
+    }
+
+    private static class Entry {
+        final int cell;
+        final double costToHere;
+        final double estimatedCost;
+
+        Entry(int cell, double costToHere, double estimatedCost) {
+            this.cell = cell;
+            this.costToHere = costToHere;
+            this.estimatedCost = estimatedCost;
+        }
+    }
+
+    /**
+     * Searches for a path by A* over the abstract graph, with the octile distance as heuristic.
+     * The path is refined when {@code Path.points} is called.
+     * @param start  the start point
+     * @param goal   the goal point
+     */
+    public Path search(Point start, Point goal) {
+        rebuildDirty();
+        if (!grid.passable(start.x, start.y) || !grid.passable(goal.x, goal.y))
+            return new Path(null, -1, 0);
+        int s = grid.index(start.x, start.y), t = grid.index(goal.x, goal.y);
+        if (s == t)
+            return new Path(List.of(start), 0, 0);
+
+        int startCluster = clusterOf(s), goalCluster = clusterOf(t);
+        int[] expansions = {0};
+        double[] fromStart = distances(startCluster, s, expansions);
+        // The edges of the grid go both ways, so these are also the distances to the goal.
+        double[] toGoal = distances(goalCluster, t, expansions);
+
+        Map<Integer, Double> costToHere = new HashMap<>();
+        Map<Integer, Integer> parent = new HashMap<>();
+        PriorityQueue<Entry> pqueue = new PriorityQueue<>((e1, e2) -> Double.compare(e1.estimatedCost, e2.estimatedCost));
+        costToHere.put(s, 0.0);
+        pqueue.add(new Entry(s, 0, octile(goal.x - start.x, goal.y - start.y)));
+        while (!pqueue.isEmpty()) {
+            Entry entry = pqueue.remove();
+            int u = entry.cell;
+            if (entry.costToHere > costToHere.get(u))
+                continue;
+            expansions[0]++;
+            if (u == t) {
+                List<Point> points = new ArrayList<>();
+                for (int p = t; p != s; p = parent.get(p))
+                    points.add(grid.point(p));
+                points.add(start);
+                Collections.reverse(points);
+                return new Path(points, entry.costToHere, expansions[0]);
+            }
+
+            BiConsumer<Integer, Double> relax = (v, weight) -> {
+                double cost = entry.costToHere + weight;
+                if (cost < costToHere.getOrDefault(v, Double.POSITIVE_INFINITY)) {
+                    costToHere.put(v, cost);
+                    parent.put(v, u);
+                    pqueue.add(new Entry(v, cost, cost + octile(goal.x - v % width, goal.y - v / width)));
+                }
+            };
+            if (u == s) {
+                for (int entrance : clusters[startCluster].cells)
+                    if (fromStart[local(entrance)] < Double.POSITIVE_INFINITY)
+                        relax.accept(entrance, fromStart[local(entrance)]);
+                if (startCluster == goalCluster && fromStart[local(t)] < Double.POSITIVE_INFINITY)
+                    relax.accept(t, fromStart[local(t)]);
+            }
+            Cluster cluster = clusters[clusterOf(u)];
+            int i = cluster.indexOf(u);
+            if (i >= 0) {
+                for (int j = 0; j < cluster.cells.length; j++)
+                    if (j != i && cluster.distance[i][j] < Double.POSITIVE_INFINITY)
+                        relax.accept(cluster.cells[j], cluster.distance[i][j]);
+                for (int partner : cluster.partners[i])
+                    relax.accept(partner, u % width != partner % width && u / width != partner / width ? SQRT2 : 1.0);
+                if (clusterOf(u) == goalCluster && toGoal[local(u)] < Double.POSITIVE_INFINITY)
+                    relax.accept(t, toGoal[local(u)]);
+            }
+        }
+        return new Path(null, -1, expansions[0]);
+    }
+
+    /**
+     * @return a description of the abstract graph
+     */
+    @Override
+    public synchronized String toString() {
+        int nodes = 0, edges = 0;
+        for (Cluster cluster : clusters) {
+            nodes += cluster.cells.length;
+            for (int i = 0; i < cluster.cells.length; i++) {
+                edges += cluster.partners[i].length;
+                for (int j = 0; j < cluster.cells.length; j++)
+                    if (j != i && cluster.distance[i][j] < Double.POSITIVE_INFINITY)
+                        edges++;
+            }
+        }
+        return String.format("HPA* abstraction: %d x %d clusters of %d x %d cells, %d entrance nodes, %d edges, %d cluster builds",
+                clustersX, clustersY, clusterSize, clusterSize, nodes, edges, builds);
+    }
+
+    /**
+     * Compares HPA* to A* on random queries of a grid: expansions, time and path lengths.
+     * Then blocks some random points on the paths, and compares rebuilding the affected clusters to building everything.
+     *
+     * Usage: java HierarchicalGrid gridfile [queries] [cluster size]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java HierarchicalGrid gridfile [queries] [cluster size]");
+            System.exit(1);
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int clusterSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CLUSTER_SIZE;
+        GridGraph grid = new GridGraph(args[0]);
+
+        long startTime = System.nanoTime();
+        HierarchicalGrid hpa = new HierarchicalGrid(grid, clusterSize);
+        double buildMillis = (System.nanoTime() - startTime) / 1e6;
+        System.out.printf("%s, built in %.3f ms%n", hpa, buildMillis);
+
+        List<GridScenario.Query> scenario = GridScenario.generate(grid, Paths.get(args[0]).getFileName().toString(), queries, 0);
+        compare(grid, hpa, scenario);
+
+        Random random = new Random(0);
+        List<Point> blocked = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            GridScenario.Query query = scenario.get(random.nextInt(scenario.size()));
+            List<Point> points = hpa.search(query.start, query.goal).points();
+            if (points.size() > 2)
+                blocked.add(points.get(1 + random.nextInt(points.size() - 2)));
+        }
+        long buildsBefore = hpa.builds;
+        for (Point p : blocked)
+            grid.setPassable(p.x, p.y, false);
+        startTime = System.nanoTime();
+        hpa.rebuildDirty();
+        System.out.printf("Blocked %d points: rebuilt %d of %d clusters in %.3f ms (building everything took %.3f ms)%n",
+                blocked.size(), hpa.builds - buildsBefore, hpa.clusters.length, (System.nanoTime() - startTime) / 1e6, buildMillis);
+        compare(grid, hpa, GridScenario.generate(grid, Paths.get(args[0]).getFileName().toString(), queries, 1));
+    }
+
+    private static void compare(GridGraph grid, HierarchicalGrid hpa, List<GridScenario.Query> scenario) {
+        PathFinder<Point> finder = new PathFinder<>(grid);
+        long astarNanos = 0, hpaNanos = 0, astarExpansions = 0, hpaExpansions = 0;
+        double totalRatio = 0, worstRatio = 1;
+        for (GridScenario.Query query : scenario) {
+            PathFinder<Point>.Result astar = finder.searchAstar(query.start, query.goal);
+            astarNanos += astar.metrics.elapsedNanos;
+            astarExpansions += astar.metrics.expanded;
+
+            long startTime = System.nanoTime();
+            Path path = hpa.search(query.start, query.goal);
+            List<Point> points = path.points();
+            hpaNanos += System.nanoTime() - startTime;
+            hpaExpansions += path.expansions;
+            if (points == null)
+                throw new IllegalStateException("HPA* found no path from " + query.start + " to " + query.goal);
+            for (int i = 1; i < points.size(); i++) {
+                Point step = points.get(i).subtract(points.get(i - 1));
+                if (Math.max(Math.abs(step.x), Math.abs(step.y)) != 1 || !grid.passable(points.get(i).x, points.get(i).y))
+                    throw new IllegalStateException("HPA* path is broken at " + points.get(i - 1) + " -> " + points.get(i));
+            }
+            double ratio = JumpPointSearch.pathCost(points) / astar.cost;
+            totalRatio += ratio;
+            worstRatio = Math.max(worstRatio, ratio);
+        }
+        int n = scenario.size();
+        System.out.printf("%d queries: A* %d expansions and %.3f ms per query, HPA* %d expansions and %.3f ms per query%n",
+                n, astarExpansions / n, astarNanos / 1e6 / n, hpaExpansions / n, hpaNanos / 1e6 / n);
+        System.out.printf("HPA* paths are %.2f%% longer on average, %.2f%% at most%n", 100 * (totalRatio / n - 1), 100 * (worstRatio - 1));
+    }
+
+}
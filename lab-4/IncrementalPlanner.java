@@ -0,0 +1,360 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+/**
+ * Lifelong Planning A* (LPA*, Koenig, Likhachev and Furcy), a search from a fixed start to a fixed goal
+ * that repairs its solution when edge costs change, instead of searching again from scratch.
+ *
+ * Like A*, it keeps the cost g(n) of the best path found to every node it has looked at,
+ * but also a one-step lookahead rhs(n), the smallest g(p) + c(p,n) over the predecessors p of n.
+ * A node is consistent if g(n) = rhs(n). The search expands the inconsistent nodes in order of
+ * min(g(n), rhs(n)) + guessCost(n, goal), until the goal is consistent and no open node can lead to a cheaper path.
+ * After edge costs change, only the targets of the changed edges get a new rhs value,
+ * so the next search only expands the part of the search tree whose costs actually changed.
+ *
+ * Since the planner recomputes rhs values, it needs the predecessors of nodes as well as the successors.
+ * The guessed costs of the graph must stay consistent when the edge costs change (the default 0 always is).
+ *
+ * The nodes are numbered (cells by their index in a grid, other nodes by their IndexedGraph number,
+ * or in the order they are met), and g and rhs are kept in arrays indexed by these numbers.
+ * A repair is not always cheaper than a new search: blocking cells on the current path can make it
+ * expand more nodes than UCS from scratch.
+ */
+public class IncrementalPlanner<Node> {
+
+    /**
+     * The incoming edges of the graph, as a callback like {@code DirectedGraph.forEachOutgoing}.
+     */
+    @FunctionalInterface
+    public interface Predecessors<Node> {
+        void forEach(Node n, DirectedGraph.EdgeConsumer<Node> action);
+    }
+
+    private final DirectedGraph<Node> graph;
+    private final Predecessors<Node> predecessors;
+    private final Node start;
+    private final Node goal;
+
+    // The number of each node, or -1 if it can't be in the graph. Nodes that have not been reached have infinite g and rhs.
+    private final ToIntFunction<Node> ids;
+    private double[] g;
+    private double[] rhs;
+    private int reached = 0;       // the number of nodes with a finite g
+    // The inconsistent nodes. Entries are not removed when their key changes, so they are checked when they are popped.
+    private final PriorityQueue<Entry> open = new PriorityQueue<>();
+    private SearchMetrics.Recorder metrics = null;
+
+    private class Entry implements Comparable<Entry> {
+        final Node node;
+        final int id;
+        final double key1, key2;   // min(g, rhs) + guess, and min(g, rhs) to break ties
+
+        Entry(Node node, int id) {
+            this.node = node;
+            this.id = id;
+            this.key2 = Math.min(g[id], rhs[id]);
+            this.key1 = key2 + graph.guessCost(node, goal);
+        }
+
+        boolean isCurrent() {
+            return g[id] != rhs[id] && Math.min(g[id], rhs[id]) == key2;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Double.compare(key1, other.key1);
+            return c != 0 ? c : Double.compare(key2, other.key2);
+        }
+    }
+
+    /**
+     * Creates a planner. Nothing is searched before {@code plan} is called.
+     * @param graph         the graph
+     * @param predecessors  the incoming edges of the graph
+     * @param start         the start node
+     * @param goal          the goal node
+     */
+    public IncrementalPlanner(DirectedGraph<Node> graph, Predecessors<Node> predecessors, Node start, Node goal) {
+        this(graph, predecessors, start, goal, numbering(), 16);
+    }
+
+    private IncrementalPlanner(DirectedGraph<Node> graph, Predecessors<Node> predecessors, Node start, Node goal,
+                               ToIntFunction<Node> ids, int numNodes) {
+        this.graph = graph;
+        this.predecessors = predecessors;
+        this.start = start;
+        this.goal = goal;
+        this.ids = ids;
+        this.g = new double[numNodes];
+        this.rhs = new double[numNodes];
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+        int v = id(start);
+        if (v < 0 || id(goal) < 0)
+            throw new IllegalArgumentException("the start and goal must be in the graph");
+        rhs[v] = 0;
+        open.add(new Entry(start, v));
+    }
+
+    /**
+     * @return a planner for an adjacency graph, whose weights are changed with {@code AdjacencyGraph.setWeight}
+     * (nodes added to the graph afterwards are not supported)
+     */
+    public static IncrementalPlanner<String> of(AdjacencyGraph graph, String start, String goal) {
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        return new IncrementalPlanner<>(graph, graph::forEachIncoming, start, goal, indexed::id, indexed.numNodes());
+    }
+
+    /**
+     * @return a planner for a grid, whose cells are blocked and unblocked with {@code GridGraph.setPassable}
+     */
+    public static IncrementalPlanner<Point> of(GridGraph grid, Point start, Point goal) {
+        ToIntFunction<Point> ids = p -> p.x >= 0 && p.y >= 0 && p.x < grid.width() && p.y < grid.height() ? grid.index(p.x, p.y) : -1;
+        return new IncrementalPlanner<>(grid, grid::forEachIncoming, start, goal, ids, grid.width() * grid.height());
+    }
+
+    /**
+     * @return a numbering of the nodes in the order they are first asked for
+     */
+    private static <Node> ToIntFunction<Node> numbering() {
+        Map<Node, Integer> numbers = new HashMap<>();
+        return n -> numbers.computeIfAbsent(n, m -> numbers.size());
+    }
+
+    /**
+     * @return the number of node {@code n}, or -1 if it can't be in the graph
+     */
+    private int id(Node n) {
+        int v = ids.applyAsInt(n);
+        if (v >= g.length) {
+            // Only a numbering in the order the nodes are met goes past the end of the arrays.
+            int length = g.length;
+            g = Arrays.copyOf(g, Math.max(2 * length, v + 1));
+            rhs = Arrays.copyOf(rhs, g.length);
+            Arrays.fill(g, length, g.length, Double.POSITIVE_INFINITY);
+            Arrays.fill(rhs, length, rhs.length, Double.POSITIVE_INFINITY);
+        }
+        return v;
+    }
+
+    private double g(Node n) {
+        int v = id(n);
+        return v < 0 ? Double.POSITIVE_INFINITY : g[v];
+    }
+
+    private void setG(int v, double value) {
+        if (g[v] == Double.POSITIVE_INFINITY)
+            reached++;
+        if (value == Double.POSITIVE_INFINITY)
+            reached--;
+        g[v] = value;
+    }
+
+    /**
+     * Tells the planner that the incoming edges of node {@code n} have changed (their weights, or which ones there are).
+     * This takes effect in the next call of {@code plan}.
+     * For example, call it with {@code to} after {@code AdjacencyGraph.setWeight(from, to, weight)},
+     * and with the point and each of its eight neighbours after {@code GridGraph.setPassable}.
+     */
+    public void update(Node n) {
+        if (n.equals(start))
+            return;
+        int v = id(n);
+        if (v < 0)
+            return;     // for example a point outside the grid, which has no edges
+        double[] best = {Double.POSITIVE_INFINITY};
+        predecessors.forEach(n, (p, weight) -> best[0] = Math.min(best[0], g(p) + weight));
+        setRhs(n, v, best[0]);
+    }
+
+    private void setRhs(Node n, int v, double value) {
+        rhs[v] = value;
+        if (g[v] != value) {
+            open.add(new Entry(n, v));
+            if (metrics != null)
+                metrics.open(open.size());
+        }
+    }
+
+    /**
+     * @return the next inconsistent node to expand, or null if there is none
+     */
+    private Entry top() {
+        while (!open.isEmpty() && !open.peek().isCurrent()) {
+            open.remove();
+            metrics.stalePops++;
+        }
+        return open.peek();
+    }
+
+    /**
+     * Searches for (or repairs) the shortest path from the start to the goal.
+     * @return the measurements of this search, where {@code visited} is the number of nodes with a finite cost
+     */
+    public SearchMetrics plan() {
+        metrics = new SearchMetrics.Recorder();
+        metrics.searchStarted();
+        int goalId = id(goal);
+        Entry top;
+        while ((top = top()) != null && (top.compareTo(new Entry(goal, goalId)) < 0 || g[goalId] != rhs[goalId])) {
+            open.remove();
+            metrics.expanded++;
+            Node u = top.node;
+            int v = top.id;
+            double oldCost = g[v];
+            if (oldCost > rhs[v]) {
+                // Over-consistent: the node got cheaper, which can only make its successors cheaper.
+                double cost = rhs[v];
+                setG(v, cost);
+                graph.forEachOutgoing(u, (s, weight) -> {
+                    metrics.relaxed++;
+                    int w = id(s);
+                    if (cost + weight < rhs[w] && !s.equals(start))
+                        setRhs(s, w, cost + weight);
+                });
+            } else {
+                // Under-consistent: the node got more expensive, so the successors whose
+                // best predecessor it was have to look for a new one, and so does the node itself.
+                setG(v, Double.POSITIVE_INFINITY);
+                graph.forEachOutgoing(u, (s, weight) -> {
+                    metrics.relaxed++;
+                    if (rhs[id(s)] == oldCost + weight)
+                        update(s);
+                });
+                update(u);
+            }
+        }
+        metrics.pathStarted();
+        return metrics.finish(reached);
+    }
+
+    /**
+     * @return the cost of the path found by the last {@code plan}, or infinity if the goal is unreachable
+     */
+    public double cost() {
+        return g(goal);
+    }
+
+    /**
+     * @return the path found by the last {@code plan}, or null if the goal is unreachable
+     */
+    public List<DirectedEdge<Node>> path() {
+        if (cost() == Double.POSITIVE_INFINITY)
+            return null;
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        Node n = goal;
+        while (!n.equals(start)) {
+            // Go back to the predecessor that gives the cost of the node.
+            List<DirectedEdge<Node>> best = new ArrayList<>(1);
+            Node to = n;
+            double cost = g(n);
+            predecessors.forEach(n, (p, weight) -> {
+                if (best.isEmpty() && g(p) + weight == cost)
+                    best.add(new DirectedEdge<>(p, to, weight));
+            });
+            if (best.isEmpty() || path.size() > reached)
+                throw new IllegalStateException("the costs are not consistent at " + n + ", call update after changing the graph");
+            path.addFirst(best.get(0));
+            n = best.get(0).from();
+        }
+        return path;
+    }
+
+    /**
+     * Changes random edges of a graph a number of times, and compares repairing the path with LPA*
+     * to searching again with UCS. In an adjacency graph, half of the changed edges are on the current path,
+     * so that it actually has to be repaired, and the changed edges get 0.5 to 2 times their weight.
+     * In a grid, the points blocked in the previous round are unblocked, and points on the current path are blocked.
+     *
+     * Usage: java IncrementalPlanner AdjacencyGraph|GridGraph graphfile start goal [rounds] [changes per round]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: java IncrementalPlanner AdjacencyGraph|GridGraph graphfile start goal [rounds] [changes per round]");
+            System.exit(1);
+        }
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        int changes = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+        Random random = new Random(0);
+
+        if (args[0].equalsIgnoreCase("AdjacencyGraph")) {
+            AdjacencyGraph graph = new AdjacencyGraph(args[1]);
+            List<String> nodes = new ArrayList<>(graph.nodes());
+            Collections.sort(nodes);
+            IncrementalPlanner<String> planner = of(graph, args[2], args[3]);
+            benchmark(graph, planner, args[2], args[3], rounds, () -> {
+                List<DirectedEdge<String>> path = planner.path();
+                for (int i = 0; i < changes; i++) {
+                    DirectedEdge<String> edge;
+                    if (i % 2 == 0 && path != null && !path.isEmpty())
+                        edge = path.get(random.nextInt(path.size()));
+                    else {
+                        List<DirectedEdge<String>> edges = graph.outgoingEdges(nodes.get(random.nextInt(nodes.size())));
+                        if (edges.isEmpty())
+                            continue;
+                        edge = edges.get(random.nextInt(edges.size()));
+                    }
+                    graph.setWeight(edge.from(), edge.to(), edge.weight() * (0.5 + 1.5 * random.nextDouble()));
+                    planner.update(edge.to());
+                }
+            });
+        } else if (args[0].equalsIgnoreCase("GridGraph")) {
+            GridGraph grid = new GridGraph(args[1]);
+            Point start = grid.parseNode(args[2]), goal = grid.parseNode(args[3]);
+            IncrementalPlanner<Point> planner = of(grid, start, goal);
+            List<Point> blocked = new ArrayList<>();
+            benchmark(grid, planner, start, goal, rounds, () -> {
+                List<DirectedEdge<Point>> path = planner.path();
+                List<Point> changed = new ArrayList<>(blocked);
+                for (Point p : blocked)
+                    grid.setPassable(p.x, p.y, true);
+                blocked.clear();
+                for (int i = changed.size(); i < changes && path != null && path.size() > 1; i++) {
+                    Point p = path.get(random.nextInt(path.size() - 1)).to();
+                    grid.setPassable(p.x, p.y, false);
+                    blocked.add(p);
+                    changed.add(p);
+                }
+                for (Point p : changed)
+                    for (int dx = -1; dx <= 1; dx++)
+                        for (int dy = -1; dy <= 1; dy++)
+                            planner.update(new Point(p.x + dx, p.y + dy));
+            });
+        } else
+            throw new IllegalArgumentException("unknown graph type: " + args[0]);
+    }
+
+    private static <Node> void benchmark(DirectedGraph<Node> graph, IncrementalPlanner<Node> planner, Node start, Node goal,
+                                         int rounds, Runnable change) {
+        PathFinder<Node> finder = new PathFinder<>(graph);
+        SearchMetrics first = planner.plan();
+        System.out.printf("Initial plan: cost %s, %d expansions in %.3f ms%n",
+                DirectedEdge.DECIMAL_FORMAT.format(planner.cost()), first.expanded, first.elapsedNanos / 1e6);
+        System.out.printf("%-6s %12s %14s %14s %14s %14s%n", "round", "cost", "LPA* expanded", "LPA* (ms)", "UCS expanded", "UCS (ms)");
+
+        long plannerNanos = 0, ucsNanos = 0;
+        for (int round = 1; round <= rounds; round++) {
+            change.run();
+            SearchMetrics repair = planner.plan();
+            PathFinder<Node>.Result ucs = finder.searchUCS(start, goal);
+            double expected = ucs.success ? ucs.cost : Double.POSITIVE_INFINITY;
+            if (Math.abs(planner.cost() - expected) > 1e-9 * Math.max(1, expected))
+                throw new IllegalStateException("LPA* found cost " + planner.cost() + " instead of " + expected);
+            plannerNanos += repair.elapsedNanos;
+            ucsNanos += ucs.metrics.elapsedNanos;
+            String cost = ucs.success ? DirectedEdge.DECIMAL_FORMAT.format(planner.cost()) : "unreachable";
+            System.out.printf("%-6d %12s %14d %14.3f %14d %14.3f%n", round, cost,
+                    repair.expanded, repair.elapsedNanos / 1e6, ucs.metrics.expanded, ucs.metrics.elapsedNanos / 1e6);
+        }
+        System.out.printf("Total: LPA* %.3f ms, UCS %.3f ms, speedup %.1f%n", plannerNanos / 1e6, ucsNanos / 1e6, (double) ucsNanos / plannerNanos);
+    }
+
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An indexed priority queue of integers 0...n-1 with double keys,
+ * in the style of the course book.
+ *
+ * It supports decreasing the key of an index already in the queue,
+ * so Dijkstra-style searches over integer node ids never need
+ * to insert stale duplicate entries.
+ */
+public class IndexMinPQ {
+
+    private final int[] pq;        // binary heap of indices, 1-based
+    private final int[] qp;        // inverse of pq: qp[pq[i]] = i, or -1 if not in the queue
+    private final double[] keys;
+    private int size;
+
+    /**
+     * Creates an empty queue for the indices 0...n-1.
+     * @param n  the number of indices
+     */
+    public IndexMinPQ(int n) {
+        pq = new int[n + 1];
+        qp = new int[n];
+        keys = new double[n];
+        Arrays.fill(qp, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int i) {
+        return qp[i] != -1;
+    }
+
+    public double keyOf(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Inserts the index {@code i} with the given key,
+     * or lowers its key if it is already in the queue with a larger key.
+     * @return true if the queue changed
+     */
+    public boolean insertOrDecrease(int i, double key) {
+        if (contains(i)) {
+            if (key >= keys[i])
+                return false;
+            keys[i] = key;
+            swim(qp[i]);
+            return true;
+        }
+        size++;
+        qp[i] = size;
+        pq[size] = i;
+        keys[i] = key;
+        swim(size);
+        return true;
+    }
+
+    /**
+     * @return the index with the smallest key
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int minIndex() {
+        if (size == 0)
+            throw new NoSuchElementException("priority queue underflow");
+        return pq[1];
+    }
+
+    /**
+     * Removes the index with the smallest key.
+     * @return the removed index
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int delMin() {
+        int min = minIndex();
+        exchange(1, size--);
+        sink(1);
+        qp[min] = -1;
+        return min;
+    }
+
+    /**
+     * Removes all indices from the queue.
+     */
+    public void clear() {
+        for (int i = 1; i <= size; i++)
+            qp[pq[i]] = -1;
+        size = 0;
+    }
+
+    private boolean greater(int i, int j) {
+        return keys[pq[i]] > keys[pq[j]];
+    }
+
+    private void exchange(int i, int j) {
+        int swap = pq[i];
+        pq[i] = pq[j];
+        pq[j] = swap;
+        qp[pq[i]] = i;
+        qp[pq[j]] = j;
+    }
+
+    private void swim(int k) {
+        while (k > 1 && greater(k / 2, k)) {
+            exchange(k, k / 2);
+            k = k / 2;
+        }
+    }
+
+    private void sink(int k) {
+        while (2 * k <= size) {
+            int j = 2 * k;
+            if (j < size && greater(j, j + 1))
+                j++;
+            if (!greater(k, j))
+                break;
+            exchange(k, j);
+            k = j;
+        }
+    }
+
+}
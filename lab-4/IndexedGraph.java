@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only snapshot of a finite directed graph.
+ *
+ * The nodes are numbered 0...n-1, and the edges are stored in
+ * compressed sparse row (CSR) form: the edges leaving node {@code v}
+ * are found at positions {@code offsets[v]} up to {@code offsets[v+1]}
+ * of the arrays {@code targets} and {@code weights}.
+ * This is much smaller than a map of edge lists, and lets preprocessing
+ * algorithms work on primitive arrays instead of node objects.
+ */
+public class IndexedGraph<Node> {
+
+    private final List<Node> nodes;
+    private final Map<Node, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+
+    private IndexedGraph(List<Node> nodes, Map<Node, Integer> ids, int[] offsets, int[] targets, double[] weights) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * Creates a snapshot of the given graph.
+     * This requires that the graph can enumerate its nodes.
+     * @param graph  the graph
+     */
+    public static <Node> IndexedGraph<Node> of(DirectedGraph<Node> graph) {
+        List<Node> nodes = new ArrayList<>(graph.nodes());
+        Map<Node, Integer> ids = new HashMap<>(nodes.size() * 2);
+        for (int v = 0; v < nodes.size(); v++)
+            ids.put(nodes.get(v), v);
+
+        int[] offsets = new int[nodes.size() + 1];
+        List<DirectedEdge<Node>> edges = new ArrayList<>();
+        for (int v = 0; v < nodes.size(); v++) {
+            edges.addAll(graph.outgoingEdges(nodes.get(v)));
+            offsets[v + 1] = edges.size();
+        }
+
+        int[] targets = new int[edges.size()];
+        double[] weights = new double[edges.size()];
+        for (int e = 0; e < edges.size(); e++) {
+            Integer to = ids.get(edges.get(e).to());
+            if (to == null)
+                throw new IllegalArgumentException("edge " + edges.get(e) + " leads outside of the graph");
+            targets[e] = to;
+            weights[e] = edges.get(e).weight();
+        }
+        return new IndexedGraph<>(nodes, ids, offsets, targets, weights);
+    }
+
+    /**
+     * @return the graph with all edges reversed, sharing the node numbering of this graph
+     */
+    public IndexedGraph<Node> reverse() {
+        int n = numNodes();
+        int[] revOffsets = new int[n + 1];
+        for (int e = 0; e < targets.length; e++)
+            revOffsets[targets[e] + 1]++;
+        for (int v = 0; v < n; v++)
+            revOffsets[v + 1] += revOffsets[v];
+
+        int[] next = Arrays.copyOf(revOffsets, n);
+        int[] revTargets = new int[targets.length];
+        double[] revWeights = new double[weights.length];
+        for (int v = 0; v < n; v++)
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int slot = next[targets[e]]++;
+                revTargets[slot] = v;
+                revWeights[slot] = weights[e];
+            }
+        return new IndexedGraph<>(nodes, ids, revOffsets, revTargets, revWeights);
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int numNodes() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the number of edges
+     */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /**
+     * @param  n  a graph node
+     * @return the number of node {@code n}, or -1 if it is not in the graph
+     */
+    public int id(Node n) {
+        Integer id = ids.get(n);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param  v  a node number
+     * @return the node with number {@code v}
+     */
+    public Node node(int v) {
+        return nodes.get(v);
+    }
+
+    /**
+     * @return the nodes, ordered by their number
+     */
+    public List<Node> nodeList() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @return the position of the first edge leaving node {@code v}
+     */
+    public int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @return the position after the last edge leaving node {@code v}
+     */
+    public int endEdge(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @return the target node number of the edge at position {@code e}
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * @return the weight of the edge at position {@code e}
+     */
+    public double weight(int e) {
+        return weights[e];
+    }
+
+}
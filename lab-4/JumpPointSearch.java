@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Jump Point Search (Harabor and Grastien) on a GridGraph.
+ *
+ * A GridGraph is a uniform-cost 8-connected grid, so most paths have many
+ * symmetric variants of equal cost. JPS runs A* over "jump points" only:
+ * from each expanded point it scans straight and diagonal lines,
+ * skipping every point whose neighbours can be reached at least as cheaply some other way.
+ * The search is still optimal, but expands far fewer points than A*.
+ *
+ * JPS+ precomputes, for every point and each of the eight directions,
+ * how far it is to the next jump point (or to the next obstacle),
+ * so that each scan takes constant time during the search.
+ *
+ * Like GridGraph, we allow diagonal moves past obstacle corners.
+ */
+public class JumpPointSearch {
+
+    // The eight directions: straight ones first, then diagonal ones.
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final double SQRT2 = Math.sqrt(2);
+
+    private final GridGraph graph;
+    private final int width;
+    private final int height;
+
+    // For JPS+: jumpDistance[d][cell] is k > 0 if the jump point in direction d is k steps away,
+    // and -k if there is no jump point but k free steps before the next obstacle.
+    private final int[][] jumpDistance;
+    // The modification count of the grid when the jump distances were computed.
+    private final long modifications;
+
+    /**
+     * The result of a jump point search.
+     */
+    public static class Path {
+        public final List<Point> points;     // every point of the path, not just the jump points; null if no path
+        public final int expansions;         // the number of jump points removed from the priority queue
+
+        Path(List<Point> points, int expansions) {
+            this.points = points;
+            this.expansions = expansions;
+        }
+    }
+
+    /**
+     * Creates a jump point search for the given grid.
+     * @param graph       the grid
+     * @param precompute  true for JPS+, which precomputes all jump distances
+     */
+    public JumpPointSearch(GridGraph graph, boolean precompute) {
+        this.graph = graph;
+        this.width = graph.width();
+        this.height = graph.height();
+        this.modifications = graph.modifications();
+        this.jumpDistance = precompute ? precomputeJumpDistances() : null;
+    }
+
+    /**
+     * @return a jump point search for the given grid, reusing the precomputed JPS+ tables if possible
+     * (they are stored in the grid itself, and computed again if the grid has changed)
+     */
+    public static JumpPointSearch of(GridGraph graph, boolean precompute) {
+        if (!precompute)
+            return new JumpPointSearch(graph, false);
+        synchronized (graph) {
+            JumpPointSearch search = graph.jumpPointsPlus;
+            if (search == null || search.modifications != graph.modifications()) {
+                search = new JumpPointSearch(graph, true);
+                graph.jumpPointsPlus = search;
+            }
+            return search;
+        }
+    }
+
+    private boolean passable(int x, int y) {
+        return graph.passable(x, y);
+    }
+
+    private int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    private static int direction(int dx, int dy) {
+        for (int d = 0; d < 8; d++)
+            if (DX[d] == dx && DY[d] == dy)
+                return d;
+        throw new IllegalArgumentException("no direction " + dx + ":" + dy);
+    }
+
+    /**
+     * @return the guessed cost of the cheapest path between two points if there were no obstacles
+     */
+    private static double octile(int dx, int dy) {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        return Math.max(dx, dy) + (SQRT2 - 1) * Math.min(dx, dy);
+    }
+
+    /**
+     * @return true if moving in direction {@code <dx,dy>} into {@code <x,y>}
+     * gives a neighbour that can only be reached optimally through {@code <x,y>}
+     */
+    private boolean hasForcedNeighbour(int x, int y, int dx, int dy) {
+        if (dx != 0 && dy != 0)
+            return (!passable(x - dx, y) && passable(x - dx, y + dy))
+                || (!passable(x, y - dy) && passable(x + dx, y - dy));
+        if (dx != 0)
+            return (!passable(x, y + 1) && passable(x + dx, y + 1))
+                || (!passable(x, y - 1) && passable(x + dx, y - 1));
+        return (!passable(x + 1, y) && passable(x + 1, y + dy))
+            || (!passable(x - 1, y) && passable(x - 1, y + dy));
+    }
+
+    /**
+     * @return the directions to search from {@code <x,y>} when arriving in direction {@code <dx,dy>}
+     * (the natural neighbours and the forced neighbours)
+     */
+    private int directionsFrom(int x, int y, int dx, int dy, int[] out) {
+        int count = 0;
+        if (dx != 0 && dy != 0) {
+            out[count++] = direction(dx, 0);
+            out[count++] = direction(0, dy);
+            out[count++] = direction(dx, dy);
+            if (!passable(x - dx, y) && passable(x - dx, y + dy))
+                out[count++] = direction(-dx, dy);
+            if (!passable(x, y - dy) && passable(x + dx, y - dy))
+                out[count++] = direction(dx, -dy);
+        } else if (dx != 0) {
+            out[count++] = direction(dx, 0);
+            if (!passable(x, y + 1) && passable(x + dx, y + 1))
+                out[count++] = direction(dx, 1);
+            if (!passable(x, y - 1) && passable(x + dx, y - 1))
+                out[count++] = direction(dx, -1);
+        } else {
+            out[count++] = direction(0, dy);
+            if (!passable(x + 1, y) && passable(x + 1, y + dy))
+                out[count++] = direction(1, dy);
+            if (!passable(x - 1, y) && passable(x - 1, y + dy))
+                out[count++] = direction(-1, dy);
+        }
+        return count;
+    }
+
+    /**
+     * Scans from {@code <x,y>} in direction {@code d}.
+     * @return the cell of the next jump point (or the goal), or -1 if there is none
+     */
+    private int jump(int x, int y, int d, int gx, int gy) {
+        return jumpDistance == null ? scan(x, y, DX[d], DY[d], gx, gy) : lookup(x, y, d, gx, gy);
+    }
+
+    /**
+     * The plain JPS scan, stepping one point at a time.
+     */
+    private int scan(int x, int y, int dx, int dy, int gx, int gy) {
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!passable(x, y))
+                return -1;
+            if ((x == gx && y == gy) || hasForcedNeighbour(x, y, dx, dy))
+                return cell(x, y);
+            if (dx != 0 && dy != 0 && (scan(x, y, dx, 0, gx, gy) >= 0 || scan(x, y, 0, dy, gx, gy) >= 0))
+                return cell(x, y);
+        }
+    }
+
+    /**
+     * The JPS+ scan, using the precomputed jump distances.
+     * The tables ignore the goal, so we check if the scan would have passed it.
+     */
+    private int lookup(int x, int y, int d, int gx, int gy) {
+        int dx = DX[d], dy = DY[d];
+        int distance = jumpDistance[d][cell(x, y)];
+        int free = Math.abs(distance);
+        int best = distance > 0 ? distance : Integer.MAX_VALUE;
+
+        if (dx == 0 || dy == 0) {
+            // The goal lies straight ahead.
+            int k = dx != 0 ? (gx - x) * dx : (gy - y) * dy;
+            boolean aligned = dx != 0 ? gy == y : gx == x;
+            if (aligned && k > 0 && k <= free)
+                best = Math.min(best, k);
+        } else {
+            // The diagonal scan crosses the goal's column or row, and a straight scan from there reaches the goal.
+            int kx = (gx - x) * dx, ky = (gy - y) * dy;
+            if (kx > 0 && kx <= free && kx < best) {
+                int rest = (gy - (y + kx * dy)) * dy;
+                if (rest == 0 || (rest > 0 && Math.abs(jumpDistance[direction(0, dy)][cell(gx, y + kx * dy)]) >= rest))
+                    best = kx;
+            }
+            if (ky > 0 && ky <= free && ky < best) {
+                int rest = (gx - (x + ky * dx)) * dx;
+                if (rest == 0 || (rest > 0 && Math.abs(jumpDistance[direction(dx, 0)][cell(x + ky * dx, gy)]) >= rest))
+                    best = ky;
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : cell(x + best * dx, y + best * dy);
+    }
+
+    /**
+     * Computes the JPS+ tables by dynamic programming,
+     * visiting the points in the opposite order of each direction.
+     * The straight directions must come first, because the diagonal ones depend on them.
+     */
+    private int[][] precomputeJumpDistances() {
+        int[][] table = new int[8][width * height];
+        for (int d = 0; d < 8; d++) {
+            int dx = DX[d], dy = DY[d];
+            for (int i = 0; i < height; i++) {
+                int y = dy > 0 ? height - 1 - i : i;
+                for (int j = 0; j < width; j++) {
+                    int x = dx > 0 ? width - 1 - j : j;
+                    int nx = x + dx, ny = y + dy;
+                    int value;
+                    if (!passable(nx, ny))
+                        value = 0;
+                    else if (hasForcedNeighbour(nx, ny, dx, dy)
+                            || (dx != 0 && dy != 0 && (table[direction(dx, 0)][cell(nx, ny)] > 0 || table[direction(0, dy)][cell(nx, ny)] > 0)))
+                        value = 1;
+                    else {
+                        int next = table[d][cell(nx, ny)];
+                        value = next > 0 ? next + 1 : next - 1;
+                    }
+                    table[d][cell(x, y)] = value;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Runs A* over jump points, with the octile distance as heuristic.
+     * @param start  the start point
+     * @param goal   the goal point
+     * @return the path found, with all intermediate points filled in
+     */
+    public Path search(Point start, Point goal) {
+        int expansions = 0;
+        if (!passable(start.x, start.y) || !passable(goal.x, goal.y))
+            return new Path(null, expansions);
+
+        int n = width * height;
+        double[] costToHere = new double[n];
+        Arrays.fill(costToHere, Double.POSITIVE_INFINITY);
+        int[] parent = new int[n];
+        boolean[] closed = new boolean[n];
+        IndexMinPQ pqueue = new IndexMinPQ(n);
+        int[] directions = new int[8];
+
+        int startCell = cell(start.x, start.y), goalCell = cell(goal.x, goal.y);
+        costToHere[startCell] = 0;
+        parent[startCell] = -1;
+        pqueue.insertOrDecrease(startCell, octile(goal.x - start.x, goal.y - start.y));
+
+        while (!pqueue.isEmpty()) {
+            int c = pqueue.delMin();
+            expansions++;
+            closed[c] = true;
+            if (c == goalCell)
+                return new Path(fillIn(parent, goalCell), expansions);
+
+            int x = c % width, y = c / width;
+            int count;
+            if (parent[c] < 0) {
+                count = 8;
+                for (int d = 0; d < 8; d++)
+                    directions[d] = d;
+            } else {
+                int px = parent[c] % width, py = parent[c] / width;
+                count = directionsFrom(x, y, Integer.signum(x - px), Integer.signum(y - py), directions);
+            }
+
+            for (int i = 0; i < count; i++) {
+                int j = jump(x, y, directions[i], goal.x, goal.y);
+                if (j < 0 || closed[j])
+                    continue;
+                int jx = j % width, jy = j / width;
+                double cost = costToHere[c] + octile(jx - x, jy - y);
+                if (cost < costToHere[j]) {
+                    costToHere[j] = cost;
+                    parent[j] = c;
+                    pqueue.insertOrDecrease(j, cost + octile(goal.x - jx, goal.y - jy));
+                }
+            }
+        }
+        return new Path(null, expansions);
+    }
+
+    /**
+     * @return the points from the start to {@code cell}, including the ones between the jump points
+     */
+    private List<Point> fillIn(int[] parent, int cell) {
+        List<Point> points = new ArrayList<>();
+        points.add(new Point(cell % width, cell / width));
+        for (int c = cell; parent[c] >= 0; c = parent[c]) {
+            int x = c % width, y = c / width;
+            int px = parent[c] % width, py = parent[c] / width;
+            int dx = Integer.signum(px - x), dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                x += dx;
+                y += dy;
+                points.add(new Point(x, y));
+            }
+        }
+        Collections.reverse(points);
+        return points;
+    }
+
+    /**
+     * Compares A*, JPS and JPS+ on random queries between passable points of the given grids.
+     * Checks that all three find paths of the same cost.
+     *
+     * Usage: java JumpPointSearch [queries] gridfile...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java JumpPointSearch [queries] gridfile...");
+            System.exit(1);
+        }
+        int queries = 200;
+        int first = 0;
+        if (args[0].matches("\\d+")) {
+            queries = Integer.parseInt(args[0]);
+            first = 1;
+        }
+
+        System.out.printf("%-28s %8s %12s %12s %12s %10s %10s %10s%n",
+                "grid", "queries", "A* exp", "JPS exp", "JPS+ exp", "A* ms", "JPS ms", "JPS+ ms");
+        for (int a = first; a < args.length; a++) {
+            GridGraph graph = new GridGraph(args[a]);
+            List<Point> points = new ArrayList<>(graph.nodes());
+            points.sort((p, q) -> p.y != q.y ? p.y - q.y : p.x - q.x);
+            Random random = new Random(0);
+            PathFinder<Point> finder = new PathFinder<>(graph);
+            JumpPointSearch jps = new JumpPointSearch(graph, false);
+            JumpPointSearch jpsPlus = JumpPointSearch.of(graph, true);
+
+            long[] expansions = new long[3];
+            long[] nanos = new long[3];
+            int solved = 0;
+            for (int q = 0; q < queries; q++) {
+                Point start = points.get(random.nextInt(points.size()));
+                Point goal = points.get(random.nextInt(points.size()));
+
+                long t0 = System.nanoTime();
+                PathFinder<Point>.Result astar = finder.searchAstar(start, goal);
+                long t1 = System.nanoTime();
+                Path plain = jps.search(start, goal);
+                long t2 = System.nanoTime();
+                Path plus = jpsPlus.search(start, goal);
+                long t3 = System.nanoTime();
+
+                double plainCost = pathCost(plain.points), plusCost = pathCost(plus.points);
+                if (astar.success != (plain.points != null) || astar.success != (plus.points != null)
+                        || (astar.success && (Math.abs(astar.cost - plainCost) > 1e-6 || Math.abs(astar.cost - plusCost) > 1e-6)))
+                    throw new IllegalStateException("JPS disagrees with A* from " + start + " to " + goal
+                            + ": " + astar.cost + " vs " + plainCost + " vs " + plusCost);
+                if (astar.success)
+                    solved++;
+                expansions[0] += astar.iterations;
+                expansions[1] += plain.expansions;
+                expansions[2] += plus.expansions;
+                nanos[0] += t1 - t0;
+                nanos[1] += t2 - t1;
+                nanos[2] += t3 - t2;
+            }
+            System.out.printf("%-28s %8s %12d %12d %12d %10.3f %10.3f %10.3f%n",
+                    args[a].replaceAll(".*/", ""), solved + "/" + queries,
+                    expansions[0] / queries, expansions[1] / queries, expansions[2] / queries,
+                    nanos[0] / 1e6 / queries, nanos[1] / 1e6 / queries, nanos[2] / 1e6 / queries);
+        }
+    }
+
+    /**
+     * @return the cost of a path given by its points, or -1 if there is no path
+     */
+    static double pathCost(List<Point> points) {
+        if (points == null)
+            return -1;
+        double cost = 0;
+        for (int i = 1; i < points.size(); i++)
+            cost += points.get(i).subtract(points.get(i - 1)).euclideanNorm();
+        return cost;
+    }
+
+}
@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The k shortest loopless paths between two nodes, with Yen's algorithm.
+ *
+ * Each path after the first is found as a deviation from an earlier one: for every node of the
+ * previous path (the spur node), we search for the shortest path from the spur node to the goal that
+ * avoids the nodes before it (the root path), and the next edge of every earlier path with the same root.
+ * The best of all these candidates is the next path.
+ *
+ * The spur searches run A* on a masked view of the graph, which hides the avoided nodes and edges
+ * instead of copying the graph. The guessed costs are the exact distances to the goal in the whole graph,
+ * from one shortest-path tree of the reversed graph (as in the Martins and Pascoal variant of Yen's algorithm).
+ * Masking only makes paths longer, so these guesses stay admissible, and where the masked edges don't matter,
+ * A* follows the tree straight to the goal.
+ *
+ * The reversed graph and its tree are only valid for the graph as it was when they were built:
+ * a lower weight would make the guesses inadmissible. So {@code isStale} tells when the graph
+ * has changed since then (see {@code DirectedGraph.modifications}), and the object must be built again.
+ */
+public class KShortestPaths<Node> {
+
+    private final DirectedGraph<Node> graph;
+    private final IndexedGraph<Node> backward;
+    private final ShortestPaths<Node> backwardPaths;
+    private final long modifications;        // the modification count of the graph when the reversed graph was built
+
+    /**
+     * A path found by {@code search}.
+     */
+    public class Route {
+        public final List<DirectedEdge<Node>> path;
+        public final double cost;
+        public final int iterations;     // the iterations of the search that found this path
+
+        Route(List<DirectedEdge<Node>> path, int iterations) {
+            this.path = path;
+            this.cost = path.stream().mapToDouble(DirectedEdge::weight).reduce(0, Double::sum);
+            this.iterations = iterations;
+        }
+
+        List<Node> nodes() {
+            List<Node> nodes = new ArrayList<>(path.size() + 1);
+            nodes.add(path.get(0).from());
+            for (DirectedEdge<Node> edge : path)
+                nodes.add(edge.to());
+            return nodes;
+        }
+    }
+
+    /**
+     * A view of the graph without some nodes and edges, whose guessed costs to the goal come from the reverse tree.
+     */
+    private class MaskedGraph implements DirectedGraph<Node> {
+        final Node goal;
+        final double[] toGoal;
+        final Set<Node> removedNodes = new HashSet<>();
+        final Map<Node, Set<Node>> removedEdges = new HashMap<>();
+
+        MaskedGraph(Node goal, double[] toGoal) {
+            this.goal = goal;
+            this.toGoal = toGoal;
+        }
+
+        boolean hidden(Node from, Node to) {
+            if (removedNodes.contains(to))
+                return true;
+            Set<Node> targets = removedEdges.get(from);
+            return targets != null && targets.contains(to);
+        }
+
+        @Override
+        public Set<Node> nodes() {
+            return graph.nodes();
+        }
+
+        @Override
+        public List<DirectedEdge<Node>> outgoingEdges(Node n) {
+            return graph.outgoingEdges(n).stream().filter(e -> !hidden(n, e.to())).collect(Collectors.toList());
+        }
+
+        @Override
+        public void forEachOutgoing(Node n, EdgeConsumer<Node> action) {
+            graph.forEachOutgoing(n, (to, weight) -> {
+                if (!hidden(n, to))
+                    action.accept(to, weight);
+            });
+        }
+
+        @Override
+        public double guessCost(Node n, Node m) {
+            if (!m.equals(goal))
+                return graph.guessCost(n, m);
+            return toGoal[backward.id(n)];
+        }
+
+        @Override
+        public Node parseNode(String str) {
+            return graph.parseNode(str);
+        }
+    }
+
+    /**
+     * Prepares the reversed graph.
+     * @param graph  the graph, which must be able to enumerate its nodes
+     */
+    public KShortestPaths(DirectedGraph<Node> graph) {
+        this.graph = graph;
+        this.modifications = graph.modifications();
+        this.backward = IndexedGraph.of(graph).reverse();
+        this.backwardPaths = new ShortestPaths<>(backward);
+    }
+
+    /**
+     * @return true if the graph has been modified since this object was built, so that its searches may be wrong
+     */
+    public boolean isStale() {
+        return graph.modifications() != modifications;
+    }
+
+    /**
+     * Finds the {@code k} shortest loopless paths from {@code start} to {@code goal}.
+     * @return the paths in order of increasing cost, fewer than {@code k} if there are not that many;
+     *         if the start is the goal, only the empty path
+     * @throws IllegalArgumentException if a node is not in the graph, or {@code k} is not positive
+     */
+    public List<Route> search(Node start, Node goal, int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive");
+        if (backward.id(start) < 0 || backward.id(goal) < 0)
+            throw new IllegalArgumentException("the start and goal must be in the graph");
+        double[] toGoal = backwardPaths.tree(backward.id(goal)).distance;
+
+        List<Route> found = new ArrayList<>();
+        PathFinder<Node>.Result first = new PathFinder<>(new MaskedGraph(goal, toGoal)).searchAstar(start, goal);
+        if (!first.success)
+            return found;
+        found.add(new Route(first.path, first.iterations));
+        // Every other path from a node to itself would have a loop.
+        if (start.equals(goal))
+            return found;
+
+        PriorityQueue<Route> candidates = new PriorityQueue<>((r1, r2) -> Double.compare(r1.cost, r2.cost));
+        Set<List<Node>> seen = new HashSet<>();
+        seen.add(found.get(0).nodes());
+        while (found.size() < k) {
+            Route previous = found.get(found.size() - 1);
+            List<Node> previousNodes = previous.nodes();
+            for (int i = 0; i < previous.path.size(); i++) {
+                Node spur = previousNodes.get(i);
+                List<Node> root = previousNodes.subList(0, i + 1);
+                MaskedGraph masked = new MaskedGraph(goal, toGoal);
+                masked.removedNodes.addAll(root.subList(0, i));
+                for (Route route : found) {
+                    List<Node> nodes = route.nodes();
+                    if (nodes.size() > i + 1 && nodes.subList(0, i + 1).equals(root))
+                        masked.removedEdges.computeIfAbsent(spur, n -> new HashSet<>()).add(nodes.get(i + 1));
+                }
+
+                PathFinder<Node>.Result spurPath = new PathFinder<>(masked).searchAstar(spur, goal);
+                if (!spurPath.success)
+                    continue;
+                List<DirectedEdge<Node>> path = new ArrayList<>(previous.path.subList(0, i));
+                path.addAll(spurPath.path);
+                Route candidate = new Route(path, spurPath.iterations);
+                if (seen.add(candidate.nodes()))
+                    candidates.add(candidate);
+            }
+            if (candidates.isEmpty())
+                break;
+            found.add(candidates.remove());
+        }
+        return found;
+    }
+
+    /**
+     * Prints the k shortest paths between two nodes of an adjacency graph.
+     *
+     * Usage: java KShortestPaths graphfile start goal [k]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: java KShortestPaths graphfile start goal [k]");
+            System.exit(1);
+        }
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        AdjacencyGraph graph = new AdjacencyGraph(args[0]);
+        PathFinder<String> finder = new PathFinder<>(graph);
+        long startTime = System.nanoTime();
+        List<PathFinder<String>.Result> results = finder.searchKShortest(args[1], args[2], k);
+        System.out.printf("%d paths in %.3f ms%n", results.size(), (System.nanoTime() - startTime) / 1e6);
+        for (int i = 0; i < results.size(); i++)
+            System.out.printf("%2d. cost %s, %d edges, %d iterations: %s%n", i + 1, DirectedEdge.DECIMAL_FORMAT.format(results.get(i).cost),
+                    results.get(i).path.size(), results.get(i).iterations,
+                    results.get(i).path.stream().map(e -> e.to().toString()).collect(Collectors.joining(" -> ", args[1] + " -> ", "")));
+    }
+
+}
@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A graph wrapper that adds an ALT heuristic (A*, landmarks and the triangle inequality)
+ * to any finite graph, for example an AdjacencyGraph which has no coordinates.
+ *
+ * During preprocessing we choose a few landmark nodes L and compute the
+ * shortest distances d(L,v) from and d(v,L) to every landmark.
+ * By the triangle inequality, both d(L,m) - d(L,n) and d(n,L) - d(m,L)
+ * are lower bounds for the distance d(n,m), so their maximum over all landmarks
+ * is an admissible (and consistent) guess.
+ *
+ * All other operations are delegated to the underlying graph,
+ * so PathFinder uses the landmarks automatically when running A*.
+ *
+ * The distances are only valid for the graph as it was preprocessed: a lower weight would make
+ * the landmark bounds inadmissible. So once the underlying graph has been modified
+ * (see {@code DirectedGraph.modifications}), only its own guesses are used, until the landmarks are computed again.
+ */
+public class LandmarkGraph<Node> implements DirectedGraph<Node> {
+
+    /**
+     * Strategies for choosing landmarks.
+     *
+     * FARTHEST repeatedly picks the node farthest from the landmarks chosen so far.
+     * AVOID (Goldberg and Harrelson) grows a shortest-path tree from a random root
+     * and picks a leaf in the subtree where the current landmarks give the worst bounds.
+     */
+    public enum Strategy { FARTHEST, AVOID }
+
+    public static final int DEFAULT_LANDMARKS = 16;
+
+    private final DirectedGraph<Node> graph;
+    private final IndexedGraph<Node> forward;
+    private final int[] landmarks;
+    private final float[][] fromLandmark;   // fromLandmark[i][v] = d(L_i, v)
+    private final float[][] toLandmark;     // toLandmark[i][v]   = d(v, L_i)
+    private boolean exact = true;           // false if some distance was rounded when stored as a float
+    private final long modifications;       // the modification count of the graph when it was preprocessed
+
+    /**
+     * Preprocesses the graph with the default number of landmarks and the AVOID strategy.
+     * @param graph  the underlying graph
+     */
+    public LandmarkGraph(DirectedGraph<Node> graph) {
+        this(graph, DEFAULT_LANDMARKS, Strategy.AVOID, new Random(0));
+    }
+
+    /**
+     * Preprocesses the graph by choosing landmarks and computing their distance arrays.
+     * @param graph         the underlying graph
+     * @param numLandmarks  the number of landmarks to choose
+     * @param strategy      how to choose the landmarks
+     * @param random        the source of randomness for the strategy
+     */
+    public LandmarkGraph(DirectedGraph<Node> graph, int numLandmarks, Strategy strategy, Random random) {
+        this.graph = graph;
+        this.modifications = graph.modifications();
+        this.forward = IndexedGraph.of(graph);
+        // The reversed graph and the searches are only needed here, so they are not kept.
+        ShortestPaths<Node> forwardPaths = new ShortestPaths<>(forward);
+        ShortestPaths<Node> backwardPaths = new ShortestPaths<>(forward.reverse());
+
+        int k = Math.min(numLandmarks, forward.numNodes());
+        landmarks = new int[k];
+        fromLandmark = new float[k][];
+        toLandmark = new float[k][];
+        for (int i = 0; i < k; i++) {
+            int landmark = (strategy == Strategy.AVOID && i > 0) ? avoid(forwardPaths, i, random) : -1;
+            if (landmark < 0)
+                landmark = farthest(forwardPaths, i, random);
+            landmarks[i] = landmark;
+            fromLandmark[i] = toFloats(forwardPaths.tree(landmark).distance);
+            toLandmark[i] = toFloats(backwardPaths.tree(landmark).distance);
+        }
+    }
+
+    /**
+     * @return the landmark nodes
+     */
+    public List<Node> landmarks() {
+        List<Node> result = new ArrayList<>();
+        for (int landmark : landmarks)
+            result.add(forward.node(landmark));
+        return result;
+    }
+
+    /**
+     * Picks the node that maximises the smallest distance to the first {@code chosen} landmarks.
+     * Nodes that no landmark can reach are preferred, so that every component gets a landmark.
+     * The first landmark is the node farthest away from a random node.
+     */
+    private int farthest(ShortestPaths<Node> forwardPaths, int chosen, Random random) {
+        int n = forward.numNodes();
+        double[] closest = new double[n];
+        if (chosen == 0)
+            closest = forwardPaths.tree(random.nextInt(n)).distance;
+        else {
+            Arrays.fill(closest, Double.POSITIVE_INFINITY);
+            for (int i = 0; i < chosen; i++)
+                for (int v = 0; v < n; v++)
+                    closest[v] = Math.min(closest[v], Math.min(fromLandmark[i][v], toLandmark[i][v]));
+        }
+
+        int best = -1;
+        for (int v = 0; v < n; v++)
+            if (!isLandmark(v, chosen) && (best < 0 || closest[v] > closest[best]))
+                best = v;
+        return best;
+    }
+
+    /**
+     * The AVOID strategy: returns a leaf of the shortest-path tree from a random root,
+     * reached by always descending into the child with the largest subtree weight.
+     * The weight of a node is how much the current landmarks underestimate its distance from the root,
+     * and subtrees that already contain a landmark get weight 0.
+     * Returns -1 if every subtree already contains a landmark.
+     */
+    private int avoid(ShortestPaths<Node> forwardPaths, int chosen, Random random) {
+        int n = forward.numNodes();
+        int root = random.nextInt(n);
+        ShortestPaths.Tree tree = forwardPaths.tree(root);
+        double[] dist = tree.distance;
+        int[] parent = tree.parent;
+        int[] order = tree.order;
+
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n];
+        int[] bestChild = new int[n];
+        Arrays.fill(bestChild, -1);
+        for (int i = order.length - 1; i >= 0; i--) {
+            int v = order[i];
+            if (isLandmark(v, chosen))
+                covered[v] = true;
+            if (covered[v])
+                size[v] = 0;
+            else
+                size[v] += dist[v] - lowerBound(root, v, chosen);
+            int p = parent[v];
+            if (p >= 0) {
+                covered[p] |= covered[v];
+                size[p] += size[v];
+                if (bestChild[p] < 0 || size[v] > size[bestChild[p]])
+                    bestChild[p] = v;
+            }
+        }
+        if (size[root] <= 0)
+            return -1;
+
+        int v = root;
+        while (bestChild[v] >= 0 && size[bestChild[v]] > 0)
+            v = bestChild[v];
+        return isLandmark(v, chosen) ? -1 : v;
+    }
+
+    private boolean isLandmark(int v, int chosen) {
+        for (int i = 0; i < chosen; i++)
+            if (landmarks[i] == v)
+                return true;
+        return false;
+    }
+
+    /**
+     * The ALT lower bound for the distance from {@code v} to {@code w},
+     * using the first {@code count} landmarks.
+     */
+    private double lowerBound(int v, int w, int count) {
+        double bound = 0;
+        for (int i = 0; i < count; i++) {
+            bound = Math.max(bound, difference(fromLandmark[i][w], fromLandmark[i][v]));
+            bound = Math.max(bound, difference(toLandmark[i][v], toLandmark[i][w]));
+        }
+        return bound;
+    }
+
+    /**
+     * @return a lower bound for a - b, where a and b are distances rounded down to float
+     */
+    private double difference(float a, float b) {
+        if (b == Float.POSITIVE_INFINITY)
+            return 0;           // no information
+        if (a == Float.POSITIVE_INFINITY)
+            return Double.POSITIVE_INFINITY;     // unreachable
+        // If b was rounded, subtract its rounding error so the bound stays admissible.
+        return Math.max(0, (double) a - b - (exact ? 0 : Math.ulp(b)));
+    }
+
+    /**
+     * @return the distances rounded down to floats
+     */
+    private float[] toFloats(double[] dist) {
+        float[] result = new float[dist.length];
+        for (int v = 0; v < dist.length; v++) {
+            float f = (float) dist[v];
+            if (f != dist[v])
+                exact = false;
+            result[v] = f > dist[v] ? Math.nextDown(f) : f;
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Node> nodes() {
+        return graph.nodes();
+    }
+
+    @Override
+    public List<DirectedEdge<Node>> outgoingEdges(Node n) {
+        return graph.outgoingEdges(n);
+    }
+
+    @Override
+    public void forEachOutgoing(Node n, EdgeConsumer<Node> action) {
+        graph.forEachOutgoing(n, action);
+    }
+
+    @Override
+    public int numNodes() {
+        return forward.numNodes();
+    }
+
+    @Override
+    public int numEdges() {
+        return forward.numEdges();
+    }
+
+    @Override
+    public long modifications() {
+        return graph.modifications();
+    }
+
+    /**
+     * @return true if the underlying graph has been modified since the landmarks were computed
+     */
+    public boolean isStale() {
+        return graph.modifications() != modifications;
+    }
+
+    /**
+     * @param  n  one node
+     * @param  m  another node
+     * @return the best of the landmark bound and the guess of the underlying graph
+     * (only the latter if the graph has been modified since the preprocessing)
+     */
+    @Override
+    public double guessCost(Node n, Node m) {
+        double guess = graph.guessCost(n, m);
+        int v = forward.id(n), w = forward.id(m);
+        if (v < 0 || w < 0 || isStale())
+            return guess;
+        return Math.max(guess, lowerBound(v, w, landmarks.length));
+    }
+
+    @Override
+    public Node parseNode(String str) {
+        return graph.parseNode(str);
+    }
+
+    @Override
+    public String toString() {
+        return graph + "Landmarks (" + landmarks.length + "): " + landmarks() + "\n";
+    }
+
+    /**
+     * Compares the number of nodes that UCS, plain A* and A* with landmarks expand
+     * on random queries in the given graph.
+     *
+     * Usage: java LandmarkGraph graphfile [queries] [landmarks]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java LandmarkGraph graphfile [queries] [landmarks]");
+            System.exit(1);
+        }
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int numLandmarks = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_LANDMARKS;
+
+        AdjacencyGraph graph = new AdjacencyGraph(args[0]);
+        long startTime = System.currentTimeMillis();
+        LandmarkGraph<String> alt = new LandmarkGraph<>(graph, numLandmarks, Strategy.AVOID, new Random(0));
+        System.out.println("Preprocessing " + numLandmarks + " landmarks: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s");
+
+        List<String> nodes = alt.forward.nodeList();
+        Random random = new Random(1);
+        long ucs = 0, astar = 0;
+        for (int q = 0; q < queries; q++) {
+            String start = nodes.get(random.nextInt(nodes.size()));
+            String goal = nodes.get(random.nextInt(nodes.size()));
+            PathFinder<String>.Result plain = new PathFinder<>(graph).searchUCS(start, goal);
+            PathFinder<String>.Result withLandmarks = new PathFinder<>(alt).searchAstar(start, goal);
+            if (plain.success != withLandmarks.success || (plain.success && Math.abs(plain.cost - withLandmarks.cost) > 1e-6))
+                throw new IllegalStateException("landmark search disagrees with UCS from " + start + " to " + goal);
+            ucs += plain.iterations;
+            astar += withLandmarks.iterations;
+        }
+        System.out.println("Average loop iterations over " + queries + " queries:");
+        System.out.println("  UCS:               " + ucs / queries);
+        System.out.println("  A* with landmarks: " + astar / queries);
+        System.out.printf("  A* expands %.1f%% fewer nodes%n", 100.0 * (ucs - astar) / ucs);
+    }
+
+}
@@ -0,0 +1,305 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only graph with string nodes, used directly from a memory-mapped binary snapshot.
+ *
+ * Parsing a large text graph (such as wikipedia-graph.txt) takes much longer than
+ * a short search in it. The snapshot is written once by {@code write} (or by running
+ * this class), and opening it only maps the file, so no edges or strings are created
+ * until a search asks for them.
+ *
+ * The file has the following sections, all numbers big-endian:
+ *   header:       the magic number, numNodes n, numEdges m, tableSize t, nameBytes b
+ *   offsets:      n+1 ints, the edges of node v are at positions offsets[v] ... offsets[v+1]-1
+ *   targets:      m ints, the target node of each edge
+ *   weights:      m doubles, the weight of each edge
+ *   nameOffsets:  n+1 ints, the name of node v is at bytes nameOffsets[v] ... nameOffsets[v+1]-1
+ *   table:        t ints, an open-addressing hash table from names to nodes (-1 for empty slots)
+ *   names:        b bytes, the UTF-8 encoded node names
+ */
+public class MappedGraph implements DirectedGraph<String> {
+
+    private static final long MAGIC = 0x4441_5434_3935_4731L;   // "DAT495G1"
+    private static final int HEADER_SIZE = 8 + 4 * 4;
+
+    private final ByteBuffer buffer;
+    private final int numNodes;
+    private final int numEdges;
+    private final int tableSize;
+    private final int offsetsStart, targetsStart, weightsStart, nameOffsetsStart, tableStart, namesStart;
+
+    /**
+     * Opens a graph snapshot by mapping it into memory.
+     * @param file  a file written by {@code write}
+     * @throws IllegalArgumentException if the file is not a graph snapshot
+     */
+    public MappedGraph(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(file + " is not a graph snapshot");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getLong(0) != MAGIC)
+            throw new IllegalArgumentException(file + " is not a graph snapshot");
+        numNodes = buffer.getInt(8);
+        numEdges = buffer.getInt(12);
+        tableSize = buffer.getInt(16);
+        int nameBytes = buffer.getInt(20);
+
+        offsetsStart = HEADER_SIZE;
+        targetsStart = offsetsStart + 4 * (numNodes + 1);
+        weightsStart = targetsStart + 4 * numEdges;
+        nameOffsetsStart = weightsStart + 8 * numEdges;
+        tableStart = nameOffsetsStart + 4 * (numNodes + 1);
+        namesStart = tableStart + 4 * tableSize;
+        if ((long) namesStart + nameBytes != buffer.capacity())
+            throw new IllegalArgumentException(file + " is truncated or corrupt");
+    }
+
+    /**
+     * Writes a snapshot of the given graph, which must be able to enumerate its nodes.
+     * @param graph  the graph
+     * @param file   the snapshot file
+     */
+    public static void write(DirectedGraph<String> graph, String file) throws IOException {
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        List<String> nodes = indexed.nodeList();
+        int n = nodes.size();
+
+        byte[][] names = new byte[n][];
+        int[] nameOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            names[v] = nodes.get(v).getBytes(StandardCharsets.UTF_8);
+            nameOffsets[v + 1] = nameOffsets[v] + names[v].length;
+        }
+
+        // A power of two at least twice the number of nodes, so that probe sequences stay short.
+        int tableSize = Integer.highestOneBit(Math.max(2 * n, 1)) << 1;
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        for (int v = 0; v < n; v++) {
+            int slot = nodes.get(v).hashCode() & (tableSize - 1);
+            while (table[slot] >= 0)
+                slot = (slot + 1) & (tableSize - 1);
+            table[slot] = v;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(file)), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(n);
+            out.writeInt(indexed.numEdges());
+            out.writeInt(tableSize);
+            out.writeInt(nameOffsets[n]);
+            for (int v = 0; v < n; v++)
+                out.writeInt(indexed.firstEdge(v));
+            out.writeInt(indexed.numEdges());
+            for (int e = 0; e < indexed.numEdges(); e++)
+                out.writeInt(indexed.target(e));
+            for (int e = 0; e < indexed.numEdges(); e++)
+                out.writeDouble(indexed.weight(e));
+            for (int offset : nameOffsets)
+                out.writeInt(offset);
+            for (int slot : table)
+                out.writeInt(slot);
+            for (byte[] name : names)
+                out.write(name);
+        }
+    }
+
+    /**
+     * @return the number of the given node, or -1 if it is not in the graph
+     */
+    public int id(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int slot = name.hashCode() & (tableSize - 1); ; slot = (slot + 1) & (tableSize - 1)) {
+            int v = buffer.getInt(tableStart + 4 * slot);
+            if (v < 0)
+                return -1;
+            if (nameEquals(v, bytes))
+                return v;
+        }
+    }
+
+    private boolean nameEquals(int v, byte[] bytes) {
+        int start = namesStart + buffer.getInt(nameOffsetsStart + 4 * v);
+        int end = namesStart + buffer.getInt(nameOffsetsStart + 4 * (v + 1));
+        if (end - start != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++)
+            if (buffer.get(start + i) != bytes[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * @return the name of the node with number {@code v}
+     */
+    public String name(int v) {
+        int start = buffer.getInt(nameOffsetsStart + 4 * v);
+        byte[] bytes = new byte[buffer.getInt(nameOffsetsStart + 4 * (v + 1)) - start];
+        buffer.get(namesStart + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int firstEdge(int v) {
+        return buffer.getInt(offsetsStart + 4 * v);
+    }
+
+    public int endEdge(int v) {
+        return buffer.getInt(offsetsStart + 4 * (v + 1));
+    }
+
+    public int target(int e) {
+        return buffer.getInt(targetsStart + 4 * e);
+    }
+
+    public double weight(int e) {
+        return buffer.getDouble(weightsStart + 8 * e);
+    }
+
+    /**
+     * @return a view of the node names (which decodes them when iterating)
+     */
+    @Override
+    public Set<String> nodes() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return numNodes;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && id((String) o) >= 0;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<>() {
+                    int v = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return v < numNodes;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        return name(v++);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param  n  a graph node
+     * @return a list of the graph edges that originate from node {@code n}
+     */
+    @Override
+    public List<DirectedEdge<String>> outgoingEdges(String n) {
+        int v = id(n);
+        if (v < 0)
+            return List.of();
+        int first = firstEdge(v), end = endEdge(v);
+        return new AbstractList<>() {
+            @Override
+            public DirectedEdge<String> get(int i) {
+                if (i < 0 || i >= end - first)
+                    throw new IndexOutOfBoundsException(i);
+                return new DirectedEdge<>(n, name(target(first + i)), weight(first + i));
+            }
+
+            @Override
+            public int size() {
+                return end - first;
+            }
+        };
+    }
+
+    @Override
+    public void forEachOutgoing(String n, EdgeConsumer<String> action) {
+        int v = id(n);
+        if (v < 0)
+            return;
+        for (int e = firstEdge(v); e < endEdge(v); e++)
+            action.accept(name(target(e)), weight(e));
+    }
+
+    @Override
+    public int numNodes() {
+        return numNodes;
+    }
+
+    @Override
+    public int numEdges() {
+        return numEdges;
+    }
+
+    @Override
+    public String parseNode(String n) {
+        return n;
+    }
+
+    /**
+     * @return a string representation of the graph
+     */
+    @Override
+    public String toString() {
+        StringWriter buffer = new StringWriter();
+        PrintWriter w = new PrintWriter(buffer);
+        w.println("Memory-mapped graph with " + numNodes() + " nodes and " + numEdges() + " edges");
+        w.println();
+
+        w.println("Random example nodes with outgoing edges:");
+        DirectedEdge.printOutgoingEdges(w, this, null);
+        return buffer.toString();
+    }
+
+    /**
+     * Converts a text graph (as read by AdjacencyGraph) to a binary snapshot,
+     * and compares the loading times.
+     *
+     * Usage: java MappedGraph textfile snapshotfile
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java MappedGraph textfile snapshotfile");
+            System.exit(1);
+        }
+        long startTime = System.nanoTime();
+        AdjacencyGraph text = new AdjacencyGraph(args[0]);
+        System.out.printf("Parsing the text graph: %.1fms%n", (System.nanoTime() - startTime) / 1e6);
+
+        write(text, args[1]);
+        startTime = System.nanoTime();
+        MappedGraph mapped = new MappedGraph(args[1]);
+        System.out.printf("Opening the snapshot: %.1fms%n", (System.nanoTime() - startTime) / 1e6);
+        System.out.println("Wrote " + mapped.numNodes() + " nodes and " + mapped.numEdges() + " edges to " + args[1]
+                + " (" + Files.size(Paths.get(args[1])) + " bytes)");
+
+        for (String node : text.nodes())
+            if (!mapped.outgoingEdges(node).toString().equals(text.outgoingEdges(node).toString()))
+                throw new IllegalStateException("the snapshot differs from the text graph at node " + node);
+    }
+
+}
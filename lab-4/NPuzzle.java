@@ -1,6 +1,7 @@
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -34,16 +35,20 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
             IntStream.rangeClosed('a', 'z')
     ).flatMapToInt(Function.identity()).mapToObj(i -> (char) i).toArray(Character[]::new);
 
-    private static final Point[] MOVES = {
-        new Point(-1, 0),
-        new Point(1, 0),
-        new Point(0, -1),
-        new Point(0, 1)
-    };
-
     private final int N;
     private final Character[] tileNames;
 
+    // The packed state representation uses `bits` bits per tile:
+    // a nibble for N <= 4, so that a whole state fits in a single long.
+    private final int bits;
+
+    // goalDistance[tile][cell] is the Manhattan distance from the cell to the tile's goal cell
+    // (0 for the empty tile, which is not counted).
+    private final int[][] goalDistance;
+
+    // If set, used instead of the Manhattan distance when guessing the cost to the goal state.
+    private PatternDatabase patternDatabase = null;
+
     /**
      * Creates a new n-puzzle of size {@code N}
      * @param N  the size of the puzzle
@@ -54,6 +59,41 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
 
         this.N = N;
         this.tileNames = Arrays.copyOf(ALL_TILE_NAMES, N * N);
+        this.bits = N <= 4 ? 4 : 32 - Integer.numberOfLeadingZeros(N * N - 1);
+
+        goalDistance = new int[N * N][N * N];
+        for (int tile = 1; tile < N * N; tile++)
+            for (int cell = 0; cell < N * N; cell++)
+                goalDistance[tile][cell] = distance(cell, goalCell(tile));
+    }
+
+    /**
+     * @return the size N of the puzzle
+     */
+    public int size() {
+        return N;
+    }
+
+    /**
+     * Makes {@code guessCost} use the given pattern databases when the target is the goal state.
+     * @param patternDatabase  pattern databases for this puzzle
+     */
+    public void usePatternDatabase(PatternDatabase patternDatabase) {
+        this.patternDatabase = patternDatabase;
+    }
+
+    /**
+     * @return the Manhattan distance between two cells
+     */
+    private int distance(int cell1, int cell2) {
+        return Math.abs(cell1 % N - cell2 % N) + Math.abs(cell1 / N - cell2 / N);
+    }
+
+    /**
+     * @return the cell of the given tile in the traditional goal state
+     */
+    public int goalCell(int tile) {
+        return Math.floorMod(tile - 1, N * N);
     }
 
     /**
@@ -61,38 +101,99 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
      *
      * We represent the tiles as numbers from 0 to N * N.
      * The empty tile is represented by 0.
+     * The cells are numbered from 0 to N * N, sending a point p to p.y * N + p.x.
      *
-     * The array {@code positions} stores the position of each tile.
-     *
-     * Optional task: try out different representations of states:
-     * - coding the positions as indices (sending a point p to p.y * N + p.x)
-     * - using an array {@code tiles} that stores the tile at each point
-     * - combinations (more space usage, but better runtime?)
+     * The state is packed into bit fields storing the tile at each cell:
+     * for N <= 4 a nibble per cell of a single long {@code packed},
+     * and for larger N a few longs {@code wide} (two for N = 5).
+     * We also store the cell of the empty tile, and the Manhattan distance
+     * to the goal state, which is updated incrementally by each move.
      */
     public class State {
-        private final Point[] positions;
+        private final long packed;      // used if N <= 4
+        private final long[] wide;      // used if N > 4, otherwise null
+        private final int blank;        // the cell of the empty tile
+        private final int manhattan;    // the sum of Manhattan distances of all tiles to their goal cells
+
+        private State(long packed, long[] wide, int blank, int manhattan) {
+            this.packed = packed;
+            this.wide = wide;
+            this.blank = blank;
+            this.manhattan = manhattan;
+        }
+
+        /**
+         * @return the tile at the given cell
+         */
+        public int tileAt(int cell) {
+            if (wide == null)
+                return (int) (packed >>> (cell << 2)) & 0xF;
+            return (int) getBits(wide, cell * bits, bits);
+        }
 
-        private State(Point[] positions) {
-            this.positions = positions;
+        /**
+         * @return the packed representation of this state, a nibble per cell, see {@code stateFromKey}
+         * @throws UnsupportedOperationException if N > 4, so that the state does not fit in a long
+         */
+        public long key() {
+            if (wide != null)
+                throw new UnsupportedOperationException("only states of puzzles with N <= 4 fit in a long");
+            return packed;
+        }
+
+        /**
+         * @return the cell of the empty tile
+         */
+        public int blankCell() {
+            return blank;
+        }
+
+        /**
+         * @return the Manhattan distance from this state to the traditional goal state
+         */
+        public int manhattan() {
+            return manhattan;
+        }
+
+        /**
+         * @return the state given by sliding the tile at {@code cell} into the empty cell
+         * (which must be next to it)
+         */
+        public State move(int cell) {
+            int tile = tileAt(cell);
+            int manhattanNew = manhattan - goalDistance[tile][cell] + goalDistance[tile][blank];
+            if (wide == null) {
+                // The nibble of the empty cell is 0, so we can just or in the tile.
+                long packedNew = (packed & ~(0xFL << (cell << 2))) | ((long) tile << (blank << 2));
+                return new State(packedNew, null, cell, manhattanNew);
+            }
+            long[] wideNew = wide.clone();
+            setBits(wideNew, blank * bits, bits, tile);
+            setBits(wideNew, cell * bits, bits, 0);
+            return new State(0, wideNew, cell, manhattanNew);
         }
 
         /**
          * @return the state given by swapping the tiles {@code i} and {@code j}
          */
         public State swap(int i, int j) {
-            Point[] positionsNew = positions.clone();
-            positionsNew[i] = positions[j];
-            positionsNew[j] = positions[i];
-            return new State(positionsNew);
+            int[][] tiles = tiles();
+            for (int[] row : tiles)
+                for (int x = 0; x != N; x++)
+                    row[x] = row[x] == i ? j : row[x] == j ? i : row[x];
+            return stateFromTiles(tiles);
         }
 
         /**
          * @return a randomly shuffled state
          */
         public State shuffled() {
-            Point[] positionsNew = positions.clone();
-            Collections.shuffle(Arrays.asList(positionsNew));
-            return new State(positionsNew);
+            List<Integer> tiles = IntStream.range(0, N * N).boxed().collect(Collectors.toList());
+            Collections.shuffle(tiles);
+            int[][] tilesNew = new int[N][N];
+            for (int cell = 0; cell != N * N; cell++)
+                tilesNew[cell / N][cell % N] = tiles.get(cell);
+            return stateFromTiles(tilesNew);
         }
 
         /**
@@ -100,10 +201,8 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
          */
         public int[][] tiles() {
             int[][] tiles = new int[N][N];
-            for (int i = 0; i != positions.length; i++) {
-                Point p = positions[i];
-                tiles[p.y][p.x] = i;
-            }
+            for (int cell = 0; cell != N * N; cell++)
+                tiles[cell / N][cell % N] = tileAt(cell);
             return tiles;
         }
 
@@ -113,12 +212,15 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
                 return true;
             if (!(o instanceof State))
                 return false;
-            return Arrays.deepEquals(positions, ((State) o).positions);
+            State other = (State) o;
+            return packed == other.packed && Arrays.equals(wide, other.wide);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(positions);
+            long hash = wide == null ? packed : Arrays.hashCode(wide);
+            // Spread the bits, since nearby states differ in only a few nibbles.
+            return Long.hashCode(hash * 0x9E3779B97F4A7C15L);
         }
 
         /**
@@ -133,6 +235,26 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
         }
     }
 
+    // Helper methods for bit fields that may cross the boundary between two longs.
+
+    private static long getBits(long[] words, int offset, int length) {
+        int i = offset >>> 6, shift = offset & 63;
+        long value = words[i] >>> shift;
+        if (shift + length > 64)
+            value |= words[i + 1] << (64 - shift);
+        return value & ((1L << length) - 1);
+    }
+
+    private static void setBits(long[] words, int offset, int length, long value) {
+        int i = offset >>> 6, shift = offset & 63;
+        long mask = (1L << length) - 1;
+        words[i] = (words[i] & ~(mask << shift)) | (value << shift);
+        if (shift + length > 64) {
+            int rest = 64 - shift;
+            words[i + 1] = (words[i + 1] & ~(mask >>> rest)) | (value >>> rest);
+        }
+    }
+
     // Helper methods for formatting and parsing tiles.
 
     public char formatTile(int tile) {
@@ -151,15 +273,84 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
      * @throws IllegalArgumentException if there are duplicate tiles (equivalently, missing tiles).
      */
     public State stateFromTiles(int[][] tiles) {
-        Point[] positions = new Point[N * N];
+        boolean[] seen = new boolean[N * N];
+        long packed = 0;
+        long[] wide = N <= 4 ? null : new long[(N * N * bits + 63) / 64];
+        int blank = -1, manhattan = 0;
         for (int y = 0; y != N; y++)
             for (int x = 0; x != N; x++) {
                 int tile = tiles[y][x];
-                if (positions[tile] != null)
+                int cell = y * N + x;
+                if (seen[tile])
                     throw new IllegalArgumentException("duplicate tile " + formatTile(tile));
-                positions[tile] = new Point(x, y);
+                seen[tile] = true;
+                if (tile == 0)
+                    blank = cell;
+                manhattan += goalDistance[tile][cell];
+                if (wide == null)
+                    packed |= (long) tile << (cell << 2);
+                else
+                    setBits(wide, cell * bits, bits, tile);
             }
-        return new State(positions);
+        return new State(packed, wide, blank, manhattan);
+    }
+
+    /**
+     * @return the state with the given packed representation (as returned by {@code State.key})
+     * @throws IllegalArgumentException if N > 4, or the key is not a valid state
+     */
+    public State stateFromKey(long key) {
+        if (N > 4)
+            throw new IllegalArgumentException("only states of puzzles with N <= 4 fit in a long");
+        int[][] tiles = new int[N][N];
+        for (int cell = 0; cell != N * N; cell++) {
+            int tile = (int) (key >>> (cell << 2)) & 0xF;
+            if (tile >= N * N)
+                throw new IllegalArgumentException("invalid key " + Long.toHexString(key));
+            tiles[cell / N][cell % N] = tile;
+        }
+        if (N < 4 && key >>> (N * N * 4) != 0)
+            throw new IllegalArgumentException("invalid key " + Long.toHexString(key));
+        return stateFromTiles(tiles);
+    }
+
+    // Helper methods for searches that work on packed states (see {@code State.key}) without creating State objects.
+
+    /**
+     * @return the cell of the empty tile in a packed state
+     */
+    public int blankCell(long key) {
+        // Or every nibble into its lowest bit, so that the lowest bit is 0 only in the empty nibble.
+        long bits = key | (key >>> 1);
+        bits |= bits >>> 2;
+        long cells = N == 4 ? -1L : (1L << (N * N * 4)) - 1;
+        return Long.numberOfTrailingZeros(~bits & 0x1111111111111111L & cells) >>> 2;
+    }
+
+    /**
+     * @return the packed state given by sliding the tile at {@code cell} into the empty cell {@code blank}
+     * (which must be next to it)
+     */
+    public static long moveKey(long key, int blank, int cell) {
+        long tile = (key >>> (cell << 2)) & 0xF;
+        return (key & ~(0xFL << (cell << 2))) | (tile << (blank << 2));
+    }
+
+    /**
+     * @return the packed state whose lowest 60 bits are those of {@code key}:
+     * for N = 4, the tile in the last cell is the only one missing from the other cells,
+     * so searches can use the top nibble of a key for other purposes
+     */
+    public long completeKey(long key) {
+        key &= (1L << 60) - 1;
+        if (N < 4)
+            return key;
+        long tile = key ^ (key >>> 32);
+        tile ^= tile >>> 16;
+        tile ^= tile >>> 8;
+        tile ^= tile >>> 4;
+        // The exclusive or of all tiles 0, ..., 15 is 0.
+        return key | ((tile & 0xF) << 60);
     }
 
     /**
@@ -190,10 +381,10 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
      * The empty tile is in the bottom right corner.
      */
     public State goalState() {
-        return new State(IntStream.range(0, N * N)
-                .map(i -> Math.floorMod(i - 1, N * N))
-                .mapToObj(i -> new Point(i % N, i / N))
-                .toArray(Point[]::new));
+        int[][] tiles = new int[N][N];
+        for (int cell = 0; cell != N * N; cell++)
+            tiles[cell / N][cell % N] = (cell + 1) % (N * N);
+        return stateFromTiles(tiles);
     }
 
     /**
@@ -234,34 +425,50 @@ public class NPuzzle implements DirectedGraph<NPuzzle.State> {
      */
     @Override
     public List<DirectedEdge<State>> outgoingEdges(State s) {
-        // Consider all possible moves...
-        return Arrays.stream(MOVES).map(move -> {
-            // The current position of the empty tile.
-            Point emptyPos = s.positions[0];
-            // The position of the tile that moves to the empty tile in the direction `move`.
-            return emptyPos.subtract(move);
-        }).filter(this::valid).map(tilePos -> {
-            // The tile to swap with the empty tile.
-            int tile = Arrays.asList(s.positions).indexOf(tilePos);
-            // The new state after swapping.
-            State t = s.swap(0, tile);
-            return new DirectedEdge<>(s, t);
-        }).collect(Collectors.toList());
+        List<DirectedEdge<State>> edges = new ArrayList<>(4);
+        forEachOutgoing(s, (t, weight) -> edges.add(new DirectedEdge<>(s, t, weight)));
+        return edges;
+    }
+
+    @Override
+    public void forEachOutgoing(State s, EdgeConsumer<State> action) {
+        int x = s.blank % N, y = s.blank / N;
+        // A tile can slide into the empty cell from the right, left, below or above.
+        if (x < N - 1)
+            action.accept(s.move(s.blank + 1), 1);
+        if (x > 0)
+            action.accept(s.move(s.blank - 1), 1);
+        if (y < N - 1)
+            action.accept(s.move(s.blank + N), 1);
+        if (y > 0)
+            action.accept(s.move(s.blank - N), 1);
     }
 
     /**
      * @param  s  one puzzle state
      * @param  t  another puzzle state
      * @return the guessed cost for getting from {@code s} to {@code t}
+     * (the sum of Manhattan distances of all tiles except the empty one)
      */
     @Override
     public double guessCost(State s, State t) {
-        // We consider all tiles except the empty one,
-        return IntStream.range(1, N * N)
-                // take the Manhattan distance between its positions in the two states,
-                .map(i -> s.positions[i].subtract(t.positions[i]).manhattanNorm())
-                // and return the sum.
-                .sum();
+        // The distance to the goal state is kept up to date by every move,
+        // but pattern databases give better guesses.
+        if (t.manhattan == 0)
+            return patternDatabase != null ? patternDatabase.guessCost(s) : s.manhattan;
+
+        // Otherwise we find the cell of each tile in t,
+        int[] cells = new int[N * N];
+        for (int cell = 0; cell != N * N; cell++)
+            cells[t.tileAt(cell)] = cell;
+        // and sum the Manhattan distances to its cells in s.
+        int cost = 0;
+        for (int cell = 0; cell != N * N; cell++) {
+            int tile = s.tileAt(cell);
+            if (tile != 0)
+                cost += distance(cell, cells[tile]);
+        }
+        return cost;
     }
 
     /**
@@ -0,0 +1,143 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A hash set of packed N-puzzle states (for N <= 4, see {@code NPuzzle.State.key}) stored outside the Java heap,
+ * that also remembers the move that reached each state, so that paths can be followed back to the start.
+ *
+ * Every state takes a single 64-bit slot of an open-addressing table with linear probing,
+ * in direct byte buffers of at most 2^27 slots (1 GiB) each, so the table can grow beyond the 2 GiB limit of one buffer.
+ * The garbage collector never looks inside the buffers, and the memory use is 8 bytes per slot,
+ * between 10.7 and 21.3 bytes per state since the table doubles when it is three quarters full.
+ * (The JVM limits direct buffers to the maximum heap size, unless -XX:MaxDirectMemorySize says otherwise.)
+ *
+ * The key of a state has 4 bits per cell, so for N = 4 it uses all 64 bits.
+ * But the tile in the last cell is the only one missing from the other 15 cells,
+ * so the top nibble is redundant, and the slot stores the move in its place:
+ * the lowest 60 bits are the key, and the top 4 bits are the move plus one (so that 0 marks an empty slot).
+ * For N < 4 the top nibble of a key is always 0.
+ */
+public class PackedStateSet {
+
+    // The number of different moves that can be stored: 0, ..., MOVES - 1.
+    public static final int MOVES = 15;
+
+    private static final int SEGMENT_BITS = 27;
+    private static final long KEY_MASK = (1L << 60) - 1;
+    private static final double MAX_LOAD = 0.75;
+
+    private LongBuffer[] segments;
+    private long capacity;    // the number of slots, a power of two
+    private long size = 0;
+
+    /**
+     * Creates an empty set with room for the given number of states before it has to grow.
+     * @param  expectedSize  the expected number of states
+     */
+    public PackedStateSet(long expectedSize) {
+        long capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize)
+            capacity *= 2;
+        allocate(capacity);
+    }
+
+    private void allocate(long capacity) {
+        int segmentSize = (int) Math.min(capacity, 1L << SEGMENT_BITS);
+        segments = new LongBuffer[(int) (capacity / segmentSize)];
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = ByteBuffer.allocateDirect(segmentSize * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        this.capacity = capacity;
+    }
+
+    private long get(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)].get((int) (slot & ((1L << SEGMENT_BITS) - 1)));
+    }
+
+    private void put(long slot, long value) {
+        segments[(int) (slot >>> SEGMENT_BITS)].put((int) (slot & ((1L << SEGMENT_BITS) - 1)), value);
+    }
+
+    /**
+     * @return the first slot to look for the key in
+     */
+    private long home(long key) {
+        // The finalizer of MurmurHash3, since nearby states differ in only a few nibbles.
+        long h = key & KEY_MASK;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return (h ^ (h >>> 33)) & (capacity - 1);
+    }
+
+    /**
+     * @return the slot that contains the key, or the empty slot where it would be added
+     */
+    private long find(long key) {
+        key &= KEY_MASK;
+        long slot = home(key);
+        while (true) {
+            long value = get(slot);
+            if (value == 0 || (value & KEY_MASK) == key)
+                return slot;
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /**
+     * Adds a state, unless it is already in the set.
+     * @param  key   the packed state
+     * @param  move  the move that reached the state, between 0 and {@code MOVES - 1}
+     * @return true if the state was added, false if it was already in the set (with its old move)
+     */
+    public boolean add(long key, int move) {
+        if (move < 0 || move >= MOVES)
+            throw new IllegalArgumentException("invalid move " + move);
+        long slot = find(key);
+        if (get(slot) != 0)
+            return false;
+        put(slot, (key & KEY_MASK) | ((long) (move + 1) << 60));
+        if (++size > capacity * MAX_LOAD)
+            grow();
+        return true;
+    }
+
+    private void grow() {
+        LongBuffer[] old = segments;
+        allocate(capacity * 2);
+        for (LongBuffer segment : old)
+            for (int i = 0; i < segment.capacity(); i++) {
+                long value = segment.get(i);
+                if (value != 0)
+                    put(find(value), value);
+            }
+    }
+
+    /**
+     * @return true if the state is in the set
+     */
+    public boolean contains(long key) {
+        return get(find(key)) != 0;
+    }
+
+    /**
+     * @return the move that reached the state, or -1 if it is not in the set
+     */
+    public int move(long key) {
+        return (int) (get(find(key)) >>> 60) - 1;
+    }
+
+    /**
+     * @return the number of states in the set
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of memory outside the heap used by the table
+     */
+    public long offHeapBytes() {
+        return capacity * 8;
+    }
+
+}
@@ -0,0 +1,334 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash-distributed A* (HDA*, Kishimoto, Fukunaga and Botea), a parallel A* for several cores.
+ *
+ * Every node is owned by one worker thread, chosen by a hash of the node.
+ * Each worker has its own open and closed sets, and only expands the nodes it owns.
+ * The successors of a node are sent to their owners through lock-free queues,
+ * in batches so that the queues are not touched for every single node.
+ *
+ * Since the workers don't expand the nodes in a single global best-first order,
+ * a node can be reached again more cheaply after it has been expanded, and is then expanded again.
+ * When a worker expands the goal, it becomes the incumbent solution, and nodes whose
+ * estimated cost is not lower than the incumbent are dropped.
+ * The search ends when no node is left anywhere (in open sets, queues or send buffers).
+ * Then the incumbent is optimal, given admissible guesses.
+ * A worker without nodes parks until a batch arrives in its inbox, or the search ends.
+ */
+public class ParallelAstar<Node> {
+
+    public static final int BATCH_SIZE = 64;
+
+    // An idle worker first yields a few times, since work often arrives soon,
+    // and then parks, doubling the time it waits from the first to the last.
+    private static final int IDLE_YIELDS = 16;
+    private static final long MIN_PARK_NANOS = 10_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private final DirectedGraph<Node> graph;
+
+    /**
+     * A search node. Entries are immutable, so they can be passed between threads.
+     */
+    private class Entry {
+        final Node node;
+        final double costToHere;
+        final double estimatedCost;
+        final double lastWeight;             // 0 for the start
+        final Entry backPointer;             // null for the start
+
+        Entry(Node node, double costToHere, double estimatedCost, double lastWeight, Entry backPointer) {
+            this.node = node;
+            this.costToHere = costToHere;
+            this.estimatedCost = estimatedCost;
+            this.lastWeight = lastWeight;
+            this.backPointer = backPointer;
+        }
+    }
+
+    /**
+     * The outcome of a parallel search.
+     */
+    public class Outcome {
+        public final boolean success;
+        public final double cost;
+        public final List<DirectedEdge<Node>> path;
+        public final long[] expansions;     // the number of nodes expanded by each worker
+
+        Outcome(boolean success, double cost, List<DirectedEdge<Node>> path, long[] expansions) {
+            this.success = success;
+            this.cost = cost;
+            this.path = path;
+            this.expansions = expansions;
+        }
+
+        public long totalExpansions() {
+            long total = 0;
+            for (long e : expansions)
+                total += e;
+            return total;
+        }
+    }
+
+    /**
+     * @param graph  the graph to search
+     */
+    public ParallelAstar(DirectedGraph<Node> graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Searches for the shortest path from {@code start} to {@code goal} with the given number of workers.
+     */
+    public Outcome search(Node start, Node goal, int threads) throws InterruptedException {
+        if (threads < 1)
+            throw new IllegalArgumentException("there must be at least one worker");
+        Search search = new Search(goal, threads);
+        search.send(new Entry(start, 0, graph.guessCost(start, goal), 0, null), null);
+
+        // All threads are created before any of them starts, so that every worker can see the others' threads.
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Worker worker = search.workers.get(i);
+            worker.thread = workers[i] = new Thread(worker::run, "HDA* worker " + i);
+        }
+        for (Thread worker : workers)
+            worker.start();
+        for (Thread worker : workers)
+            worker.join();
+        if (search.failure != null)
+            throw new IllegalStateException("a worker failed", search.failure);
+
+        long[] expansions = new long[threads];
+        for (int i = 0; i < threads; i++)
+            expansions[i] = search.workers.get(i).expansions;
+        Entry best = search.incumbent;
+        if (best == null)
+            return new Outcome(false, -1, null, expansions);
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        for (Entry entry = best; entry.backPointer != null; entry = entry.backPointer)
+            path.addFirst(new DirectedEdge<>(entry.backPointer.node, entry.node, entry.lastWeight));
+        return new Outcome(true, best.costToHere, path, expansions);
+    }
+
+    /**
+     * The shared state of one search.
+     */
+    private class Search {
+        final Node goal;
+        final List<Worker> workers = new ArrayList<>();
+        // The number of entries that are buffered, queued or open, and not yet expanded or dropped.
+        // An entry is counted when it is created, before its parent is uncounted, so this is 0 only at the end.
+        final AtomicLong unfinished = new AtomicLong();
+        volatile Entry incumbent = null;
+        volatile double incumbentCost = Double.POSITIVE_INFINITY;
+        volatile Throwable failure = null;
+
+        Search(Node goal, int threads) {
+            this.goal = goal;
+            for (int i = 0; i < threads; i++)
+                workers.add(new Worker(this));
+        }
+
+        Worker owner(Node node) {
+            // Spread the hash code, since the low bits of some hash codes are poorly distributed.
+            int h = node.hashCode() * 0x9E3779B9;
+            return workers.get(Math.floorMod(h ^ (h >>> 16), workers.size()));
+        }
+
+        /**
+         * Sends an entry to its owner, through the send buffer of {@code from} (or directly if null).
+         * Entries that {@code from} owns itself go straight into its open set (unless they were
+         * expanded more cheaply already), so that a worker expands its own nodes in best-first order.
+         */
+        void send(Entry entry, Worker from) {
+            Worker to = owner(entry.node);
+            if (to == from) {
+                Double closedCost = from.closed.get(entry.node);
+                if (closedCost != null && closedCost <= entry.costToHere)
+                    return;
+            }
+            unfinished.incrementAndGet();
+            if (from == null)
+                to.deliver(List.of(entry));
+            else if (to == from)
+                from.open.add(entry);
+            else
+                from.buffer(to, entry);
+        }
+
+        void wakeAll() {
+            for (Worker worker : workers)
+                LockSupport.unpark(worker.thread);
+        }
+
+        synchronized void offerSolution(Entry entry) {
+            if (entry.costToHere < incumbentCost) {
+                incumbent = entry;
+                incumbentCost = entry.costToHere;
+            }
+        }
+    }
+
+    /**
+     * One worker: its inbox, open and closed sets, and send buffers.
+     */
+    private class Worker {
+        final Search search;
+        // Many workers add batches to the inbox, only the owner removes them.
+        final Queue<List<Entry>> inbox = new ConcurrentLinkedQueue<>();
+        final PriorityQueue<Entry> open = new PriorityQueue<>((e1, e2) -> Double.compare(e1.estimatedCost, e2.estimatedCost));
+        final Map<Node, Double> closed = new HashMap<>();     // the cheapest cost each node was expanded with
+        final Map<Worker, List<Entry>> buffers = new HashMap<>();
+        long expansions = 0;
+        Thread thread = null;                    // the thread that runs this worker
+        volatile boolean parked = false;         // true while the worker may be waiting for a batch
+
+        Worker(Search search) {
+            this.search = search;
+        }
+
+        void buffer(Worker to, Entry entry) {
+            List<Entry> batch = buffers.computeIfAbsent(to, w -> new ArrayList<>(BATCH_SIZE));
+            batch.add(entry);
+            if (batch.size() >= BATCH_SIZE) {
+                to.deliver(batch);
+                buffers.remove(to);
+            }
+        }
+
+        void flush() {
+            for (Map.Entry<Worker, List<Entry>> batch : buffers.entrySet())
+                batch.getKey().deliver(batch.getValue());
+            buffers.clear();
+        }
+
+        /**
+         * Adds a batch to the inbox, and wakes up the worker if it is waiting for one.
+         */
+        void deliver(List<Entry> batch) {
+            inbox.add(batch);
+            if (parked)
+                LockSupport.unpark(thread);
+        }
+
+        void run() {
+            try {
+                int idle = 0;
+                long parkNanos = 0;
+                while (search.failure == null) {
+                    List<Entry> batch;
+                    while ((batch = inbox.poll()) != null)
+                        open.addAll(batch);
+
+                    if (open.isEmpty()) {
+                        flush();
+                        if (search.unfinished.get() == 0)
+                            break;
+                        if (++idle <= IDLE_YIELDS) {
+                            Thread.yield();
+                            continue;
+                        }
+                        // Announce the wait before checking the inbox, so that a batch added after
+                        // the check finds the flag set and unparks us. The timeout is only a safety net.
+                        parkNanos = Math.min(Math.max(2 * parkNanos, MIN_PARK_NANOS), MAX_PARK_NANOS);
+                        parked = true;
+                        if (inbox.isEmpty())
+                            LockSupport.parkNanos(this, parkNanos);
+                        parked = false;
+                        continue;
+                    }
+                    idle = 0;
+                    parkNanos = 0;
+
+                    Entry entry = open.remove();
+                    expand(entry);
+                    search.unfinished.decrementAndGet();
+                    // Send partial batches now and then, so that other workers don't run out of work.
+                    if ((expansions & (BATCH_SIZE - 1)) == 0)
+                        flush();
+                }
+            } catch (Throwable e) {
+                search.failure = e;
+            }
+            // The other workers may be parked, so wake them up to see that the search is over.
+            search.wakeAll();
+        }
+
+        void expand(Entry entry) {
+            if (entry.estimatedCost >= search.incumbentCost)
+                return;
+            Double closedCost = closed.get(entry.node);
+            if (closedCost != null && closedCost <= entry.costToHere)
+                return;
+            closed.put(entry.node, entry.costToHere);
+            // The goal counts as expanded, as in PathFinder.searchAstar.
+            expansions++;
+            if (entry.node.equals(search.goal)) {
+                search.offerSolution(entry);
+                return;
+            }
+            graph.forEachOutgoing(entry.node, (next, weight) -> {
+                // Never go back to the previous node.
+                if (entry.backPointer != null && next.equals(entry.backPointer.node))
+                    return;
+                double costToNext = entry.costToHere + weight;
+                double estimate = costToNext + graph.guessCost(next, search.goal);
+                if (estimate < search.incumbentCost)
+                    search.send(new Entry(next, costToNext, estimate, weight, entry), this);
+            });
+        }
+    }
+
+    /**
+     * Solves random 4x4 puzzles with 1, 2, 4, ... threads, and reports the strong-scaling speedup.
+     *
+     * Usage: java ParallelAstar [instances] [walk length] [max threads] [pdb]
+     */
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int walkLength = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        NPuzzle puzzle = new NPuzzle(4);
+        if (args.length > 3 && args[3].equalsIgnoreCase("pdb"))
+            puzzle.usePatternDatabase(new PatternDatabase(puzzle, java.nio.file.Paths.get("pdb")));
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(0);
+        ParallelAstar<NPuzzle.State> parallel = new ParallelAstar<>(puzzle);
+        for (int i = 0; i < instances; i++) {
+            NPuzzle.State start = puzzle.goalState();
+            for (int step = 0; step < walkLength; step++) {
+                List<DirectedEdge<NPuzzle.State>> edges = puzzle.outgoingEdges(start);
+                start = edges.get(random.nextInt(edges.size())).to();
+            }
+            PathFinder<NPuzzle.State>.Result serial = new PathFinder<>(puzzle).searchAstar(start, puzzle.goalState());
+            System.out.printf("%s  cost %.0f, A* %d expansions in %.3fs%n", start, serial.cost, serial.metrics.expanded, serial.metrics.elapsedNanos / 1e9);
+
+            double baseline = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long startTime = System.nanoTime();
+                ParallelAstar<NPuzzle.State>.Outcome outcome = parallel.search(start, puzzle.goalState(), threads);
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                if (threads == 1)
+                    baseline = seconds;
+                if (outcome.cost != serial.cost)
+                    throw new IllegalStateException("HDA* found cost " + outcome.cost + " instead of " + serial.cost);
+                System.out.printf("  %3d threads: %.3fs, speedup %.2f, %d expansions%n",
+                        threads, seconds, baseline / seconds, outcome.totalExpansions());
+            }
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -9,11 +10,34 @@ import java.util.stream.Collectors;
  * <p>
  * There are several methods for finding paths,
  * and they all return a PathFinder.Result object.
+ * All state of a search is local to it, so several threads
+ * can search the same (unmodified) graph with one path finder.
  */
 public class PathFinder<Node> {
 
     private final DirectedGraph<Node> graph;
-    private long startTimeMillis;
+
+    // The weight of the guessed cost in "wastar", and the schedule of weights and time limit of "arastar".
+    public static final double DEFAULT_WEIGHT = 2.0;
+    public static final double DEFAULT_ARA_INITIAL_WEIGHT = 3.0;
+    public static final double DEFAULT_ARA_WEIGHT_STEP = 0.5;
+    public static final double DEFAULT_ARA_TIME_LIMIT = 1.0;
+
+    // The start time of the current search, set at the start of every public search method.
+    // It is kept per thread, so that one path finder can run searches in several threads at once.
+    private final ThreadLocal<Long> startTimeNanos = ThreadLocal.withInitial(System::nanoTime);
+
+    // The cache of saved uniform-cost searches, or null.
+    private volatile SearchCache cache = null;
+
+    // The index used by {@code search} to reject unreachable goals, or null.
+    private volatile ReachabilityIndex<Node> reachability = null;
+
+    // The reversed graph used by {@code searchKShortest}, built by its first call and again when the graph has changed.
+    private volatile KShortestPaths<Node> kShortest = null;
+
+    // The breadth-first search engine used by {@code searchBFS}, built by its first call.
+    private volatile DirectionOptimizingBFS<Node> bfs = null;
 
     /**
      * Creates a new pathfinder for the given graph.
@@ -24,10 +48,32 @@ public class PathFinder<Node> {
         this.graph = graph;
     }
 
+    /**
+     * Makes {@code searchUCS} save its searches in the given cache, and continue them for later queries
+     * from the same start node. A saved search is discarded when the graph has been modified since
+     * (see {@code DirectedGraph.modifications}).
+     *
+     * @param cache the cache, or null to stop caching
+     */
+    public void useCache(SearchCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Makes {@code search} check the given index first, and return a failed result without searching
+     * if the goal is certainly unreachable from the start.
+     *
+     * @param index the reachability index of the graph, or null to stop using it
+     */
+    public void useReachabilityIndex(ReachabilityIndex<Node> index) {
+        this.reachability = index;
+    }
+
     /**
      * The main search method, taking the search algorithm as input.
      *
-     * @param algorithm "random", "ucs" or "astar"
+     * @param algorithm "random", "ucs", "astar", "wastar", "arastar", "hdastar", "idastar", or "jps", "jps+" and "hpa" (only for a GridGraph),
+     *                  "compact" (only for an NPuzzle with N <= 4), or "bfs" (only if every edge has weight 1)
      * @param start     the start node
      * @param goal      the goal node
      */
@@ -36,12 +82,25 @@ public class PathFinder<Node> {
         byAlgorithm.put("random", () -> searchRandom(start, goal));
         byAlgorithm.put("ucs", () -> searchUCS(start, goal));
         byAlgorithm.put("astar", () -> searchAstar(start, goal));
+        byAlgorithm.put("wastar", () -> searchWeightedAstar(start, goal, DEFAULT_WEIGHT));
+        byAlgorithm.put("arastar", () -> searchARAstar(start, goal, DEFAULT_ARA_INITIAL_WEIGHT, DEFAULT_ARA_WEIGHT_STEP,
+                DEFAULT_ARA_TIME_LIMIT, null));
+        byAlgorithm.put("hdastar", () -> searchParallelAstar(start, goal, Runtime.getRuntime().availableProcessors()));
+        byAlgorithm.put("idastar", () -> searchIDAstar(start, goal, 0));
+        byAlgorithm.put("jps", () -> searchJumpPoints(start, goal, false));
+        byAlgorithm.put("jps+", () -> searchJumpPoints(start, goal, true));
+        byAlgorithm.put("hpa", () -> searchHierarchical(start, goal));
+        byAlgorithm.put("compact", () -> searchCompact(start, goal));
+        byAlgorithm.put("bfs", () -> searchBFS(start, goal));
 
         Supplier<Result> action = byAlgorithm.get(algorithm);
         if (action == null)
             throw new IllegalArgumentException("unknown search algorithm " + algorithm);
 
-        startTimeMillis = System.currentTimeMillis();
+        startTimeNanos.set(System.nanoTime());
+        ReachabilityIndex<Node> index = reachability;
+        if (index != null && !index.mayReach(start, goal))
+            return new Result(false, start, goal, -1, null, 1);
         return action.get();
     }
 
@@ -55,6 +114,7 @@ public class PathFinder<Node> {
      * @param goal  the goal node
      */
     public Result searchRandom(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
         int iterations = 0;
         LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
         double cost = 0;
@@ -75,7 +135,7 @@ public class PathFinder<Node> {
             cost += edge.weight();
             current = edge.to();
         }
-        return new Result(false, start, goal, -1, null, iterations);
+        return new Result(false, start, goal, -1, null, iterations, null, null, Double.POSITIVE_INFINITY);
     }
 
     /**
@@ -85,30 +145,128 @@ public class PathFinder<Node> {
      * @param goal  the goal node
      */
     public Result searchUCS(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
+        SearchCache cache = this.cache;
+        if (cache != null)
+            return searchCachedUCS(cache, start, goal);
         int iterations = 0;
+        SearchMetrics.Recorder metrics = new SearchMetrics.Recorder();
         Queue<PQEntry> pqueue = new PriorityQueue<>(Comparator.comparingDouble(e -> e.costToHere));
         /*************************************************************************************************
          * TODO: Task 1a+c                                                                               *
          * Change here.                                                                                  *
          * Note: Every time you remove a node from the priority queue, you should increment `iterations` *
          *************************************************************************************************/
-        pqueue.add(new PQEntry(start, 0, null, null));
+        pqueue.add(new PQEntry(start, 0, 0, null));
         Set<Node> visited = new HashSet<>();
+        metrics.searchStarted();
 
         while (!pqueue.isEmpty()) {
+            metrics.open(pqueue.size());
             PQEntry entry = pqueue.remove();
             iterations++;
             if (!visited.contains(entry.node)) {
                 visited.add(entry.node);
+                metrics.expanded++;
                 if (entry.node.equals(goal)) {
-                    return new Result(true, start, goal, entry.costToHere, extractPath(entry), iterations);
+                    metrics.pathStarted();
+                    List<DirectedEdge<Node>> path = extractPath(entry);
+                    return new Result(true, start, goal, entry.costToHere, path, iterations, null, metrics.finish(visited.size()));
+                }
+                graph.forEachOutgoing(entry.node, (next, weight) -> {
+                    metrics.relaxed++;
+                    pqueue.add(new PQEntry(next, (entry.costToHere + weight), weight, entry));
+                });
+            } else
+                metrics.stalePops++;
+        }
+        return new Result(false, start, goal, -1, null, iterations, null, metrics.finish(visited.size()));
+    }
+
+    /**
+     * Run uniform-cost search, continuing the saved search from the same start node if there is one.
+     * The iterations only count the nodes removed from the priority queue during this call,
+     * and a goal that was already settled counts as one iteration and no expansions.
+     *
+     * @param cache the cache of saved searches
+     * @param start the start node
+     * @param goal  the goal node
+     */
+    private Result searchCachedUCS(SearchCache cache, Node start, Node goal) {
+        SearchMetrics.Recorder metrics = new SearchMetrics.Recorder();
+        @SuppressWarnings("unchecked")
+        SavedSearch search = (SavedSearch) cache.get(graph, start);
+        // A search of an older version of the graph may have settled nodes at the wrong distances.
+        if (search != null && search.modifications != graph.modifications())
+            search = null;
+        boolean isNew = search == null;
+        if (isNew) {
+            search = new SavedSearch(start);
+            cache.put(graph, start, search);
+        }
+
+        synchronized (search) {
+            metrics.searchStarted();
+            PQEntry found = search.settled.get(goal);
+            if (found != null || search.frontier.isEmpty()) {
+                // Either the goal is settled, or the search is complete and the goal is unreachable.
+                cache.recordHit();
+                if (found == null)
+                    return new Result(false, start, goal, -1, null, 1, null, metrics.finish(search.settled.size()));
+                metrics.pathStarted();
+                List<DirectedEdge<Node>> path = extractPath(found);
+                return new Result(true, start, goal, found.costToHere, path, 1, null, metrics.finish(search.settled.size()));
+            }
+            if (isNew)
+                cache.recordMiss();
+            else
+                cache.recordResume();
+            int iterations = 0;
+            while (!search.frontier.isEmpty()) {
+                metrics.open(search.frontier.size());
+                PQEntry entry = search.frontier.remove();
+                iterations++;
+                if (search.settled.containsKey(entry.node)) {
+                    metrics.stalePops++;
+                    continue;
                 }
-                for (DirectedEdge<Node> edge : graph.outgoingEdges(entry.node)) {
-                    pqueue.add(new PQEntry(edge.to(), (entry.costToHere + edge.weight()), edge, entry));
+                search.settled.put(entry.node, entry);
+                metrics.expanded++;
+                // Expand the node before returning, so that the saved frontier stays complete.
+                SavedSearch saved = search;
+                graph.forEachOutgoing(entry.node, (next, weight) -> {
+                    metrics.relaxed++;
+                    if (!saved.settled.containsKey(next))
+                        saved.frontier.add(new PQEntry(next, entry.costToHere + weight, weight, entry));
+                });
+                if (entry.node.equals(goal)) {
+                    cache.updated(graph, start, search);
+                    metrics.pathStarted();
+                    List<DirectedEdge<Node>> path = extractPath(entry);
+                    return new Result(true, start, goal, entry.costToHere, path, iterations, null, metrics.finish(search.settled.size()));
                 }
             }
+            cache.updated(graph, start, search);
+            return new Result(false, start, goal, -1, null, Math.max(iterations, 1), null, metrics.finish(search.settled.size()));
+        }
+    }
+
+    /**
+     * A uniform-cost search that can be continued: the settled nodes and the frontier.
+     */
+    private class SavedSearch implements SearchCache.Entry {
+        final Map<Node, PQEntry> settled = new HashMap<>();
+        final Queue<PQEntry> frontier = new PriorityQueue<>(Comparator.comparingDouble(e -> e.costToHere));
+        final long modifications = graph.modifications();    // the version of the graph that was searched
+
+        SavedSearch(Node start) {
+            frontier.add(new PQEntry(start, 0, 0, null));
+        }
+
+        @Override
+        public long size() {
+            return settled.size() + frontier.size();
         }
-        return new Result(false, start, goal, -1, null, iterations);
     }
 
     /**
@@ -118,30 +276,460 @@ public class PathFinder<Node> {
      * @param goal  the goal node
      */
     public Result searchAstar(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
+        return searchWeightedAstar(start, goal, 1);
+    }
+
+    /**
+     * Run weighted A*, which orders the nodes by the cost so far plus {@code weight} times the guessed cost.
+     * With a weight above 1 it expands fewer nodes, and if the guesses are consistent,
+     * the path costs at most {@code weight} times the optimal cost.
+     *
+     * @param start  the start node
+     * @param goal   the goal node
+     * @param weight the weight of the guessed cost, at least 1 (where 1 gives plain A*)
+     */
+    public Result searchWeightedAstar(Node start, Node goal, double weight) {
+        startTimeNanos.set(System.nanoTime());
+        if (!(weight >= 1))
+            throw new IllegalArgumentException("the weight must be at least 1");
         int iterations = 0;
+        SearchMetrics.Recorder metrics = new SearchMetrics.Recorder();
         /*************************************************************************************************
          * TODO: Task 1a+c                                                                               *
          * Change here.                                                                                  *
          * Note: Every time you remove a node from the priority queue, you should increment `iterations` *
          *************************************************************************************************/
-        Queue<PQEntry> pqueue = new PriorityQueue<>(Comparator.comparingDouble(e -> e.costToHere));
-        pqueue.add(new PQEntry(start, 0, null, null));
+        Queue<PQEntry> pqueue = new PriorityQueue<>(Comparator.comparingDouble(e -> e.estimatedCost));
+        pqueue.add(new PQEntry(start, 0, weight * graph.guessCost(start, goal), 0, null));
         Set<Node> visited = new HashSet<>();
+        metrics.searchStarted();
 
         while (!pqueue.isEmpty()) {
+            metrics.open(pqueue.size());
             PQEntry entry = pqueue.remove();
             iterations++;
             if (!visited.contains(entry.node)) {
                 visited.add(entry.node);
+                metrics.expanded++;
                 if (entry.node.equals(goal)) {
-                    return new Result(true, start, goal, entry.costToHere, extractPath(entry), iterations);
+                    metrics.pathStarted();
+                    List<DirectedEdge<Node>> path = extractPath(entry);
+                    return new Result(true, start, goal, entry.costToHere, path, iterations, null, metrics.finish(visited.size()), weight);
                 }
-                for (DirectedEdge<Node> edge : graph.outgoingEdges(entry.node)) {
-                    pqueue.add(new PQEntry(edge.to(), (entry.costToHere + edge.weight()), edge, entry));
+                graph.forEachOutgoing(entry.node, (next, edgeWeight) -> {
+                    metrics.relaxed++;
+                    if (visited.contains(next))
+                        return;
+                    double costToNext = entry.costToHere + edgeWeight;
+                    pqueue.add(new PQEntry(next, costToNext, costToNext + weight * graph.guessCost(next, goal), edgeWeight, entry));
+                });
+            } else
+                metrics.stalePops++;
+        }
+        return new Result(false, start, goal, -1, null, iterations, null, metrics.finish(visited.size()));
+    }
+
+    /**
+     * Run anytime repairing A* (ARA*, Likhachev, Gordon and Thrun).
+     * This runs weighted A* with decreasing weights, and reuses the previous search each time,
+     * so it finds a first path quickly and then improves it until it is optimal or the time is up.
+     * Every path found is passed to {@code onSolution}, together with a proven bound on its suboptimality
+     * (which assumes that the guesses are consistent).
+     *
+     * @param start         the start node
+     * @param goal          the goal node
+     * @param initialWeight the weight of the first search, at least 1
+     * @param weightStep    how much to decrease the weight between searches
+     * @param timeLimit     the time limit in seconds, after which the best path so far is returned
+     * @param onSolution    called with every improved path, or null
+     * @return the best path found, whose {@code bound} says how far from optimal it can be
+     */
+    public Result searchARAstar(Node start, Node goal, double initialWeight, double weightStep, double timeLimit,
+                                Consumer<Result> onSolution) {
+        startTimeNanos.set(System.nanoTime());
+        if (!(initialWeight >= 1) || !(weightStep > 0))
+            throw new IllegalArgumentException("the weight must be at least 1, and the step positive");
+        ARAstar search = new ARAstar(start, goal, System.nanoTime() + (long) (timeLimit * 1e9));
+        Result best = null;
+        for (double weight = initialWeight; ; weight = Math.max(1, weight - weightStep)) {
+            boolean completed = search.improvePath(weight);
+            Result result = search.result(weight, completed);
+            if (result.success && (best == null || result.cost < best.cost || result.bound < best.bound)) {
+                best = result;
+                if (onSolution != null)
+                    onSolution.accept(best);
+            }
+            if (!completed || weight == 1 || !result.success || best.bound <= 1)
+                break;
+        }
+        return best != null ? best : search.result(initialWeight, false);
+    }
+
+    /**
+     * The state of a run of {@code searchARAstar}.
+     */
+    private class ARAstar {
+        final Node start, goal;
+        final long deadline;
+        final Map<Node, Double> costToHere = new HashMap<>();
+        final Map<Node, DirectedEdge<Node>> lastEdge = new HashMap<>();
+        final Set<Node> closed = new HashSet<>();
+        final Set<Node> inconsistent = new HashSet<>();    // closed nodes that got a lower cost in the current search
+        Queue<PQEntry> open = new PriorityQueue<>(Comparator.comparingDouble(e -> e.estimatedCost));
+        int iterations = 0;
+
+        ARAstar(Node start, Node goal, long deadline) {
+            this.start = start;
+            this.goal = goal;
+            this.deadline = deadline;
+            costToHere.put(start, 0.0);
+            open.add(new PQEntry(start, 0, 0, 0, null));
+        }
+
+        boolean timeIsUp() {
+            return System.nanoTime() > deadline;
+        }
+
+        double cost(Node node) {
+            return costToHere.getOrDefault(node, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * An entry is stale if its node has been expanded, or has got a lower cost since it was added.
+         */
+        boolean isStale(PQEntry entry) {
+            return closed.contains(entry.node) || entry.costToHere != cost(entry.node);
+        }
+
+        /**
+         * Runs weighted A* with the given weight, starting from the current open nodes
+         * (and the inconsistent nodes of the previous search), until no open node can improve the path to the goal.
+         * @return false if the search was interrupted because the time was up
+         */
+        boolean improvePath(double weight) {
+            List<Node> reopen = new ArrayList<>(inconsistent);
+            for (PQEntry entry : open)
+                if (!isStale(entry))
+                    reopen.add(entry.node);
+            open = new PriorityQueue<>(Comparator.comparingDouble(e -> e.estimatedCost));
+            for (Node node : reopen)
+                open.add(new PQEntry(node, cost(node), cost(node) + weight * graph.guessCost(node, goal), 0, null));
+            closed.clear();
+            inconsistent.clear();
+
+            while (!open.isEmpty() && open.peek().estimatedCost < cost(goal)) {
+                if ((iterations & 255) == 0 && timeIsUp())
+                    return false;
+                PQEntry entry = open.remove();
+                iterations++;
+                if (isStale(entry))
+                    continue;
+                closed.add(entry.node);
+                graph.forEachOutgoing(entry.node, (next, edgeWeight) -> {
+                    double costToNext = entry.costToHere + edgeWeight;
+                    if (costToNext >= cost(next))
+                        return;
+                    costToHere.put(next, costToNext);
+                    lastEdge.put(next, new DirectedEdge<>(entry.node, next, edgeWeight));
+                    if (closed.contains(next))
+                        inconsistent.add(next);
+                    else
+                        open.add(new PQEntry(next, costToNext, costToNext + weight * graph.guessCost(next, goal), edgeWeight, null));
+                });
+            }
+            return true;
+        }
+
+        /**
+         * @param weight     the weight of the last search
+         * @param completed  whether the last search was completed (otherwise the weight bound doesn't hold yet)
+         * @return the current path to the goal, with a bound on its suboptimality
+         */
+        Result result(double weight, boolean completed) {
+            if (cost(goal) == Double.POSITIVE_INFINITY)
+                return new Result(false, start, goal, -1, null, iterations);
+
+            LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+            for (Node node = goal; !node.equals(start); node = path.getFirst().from())
+                path.addFirst(lastEdge.get(node));
+            // The costs of nodes on the path may have decreased since their successors were reached,
+            // so the actual cost of the path is at most the cost recorded for the goal.
+            double cost = path.stream().mapToDouble(DirectedEdge::weight).reduce(0, Double::sum);
+
+            // Every node that could still improve the path is open or inconsistent,
+            // so the smallest cost plus guess among them is a lower bound for the optimal cost.
+            double lowerBound = cost;
+            for (PQEntry entry : open)
+                if (!isStale(entry))
+                    lowerBound = Math.min(lowerBound, entry.costToHere + graph.guessCost(entry.node, goal));
+            for (Node node : inconsistent)
+                lowerBound = Math.min(lowerBound, cost(node) + graph.guessCost(node, goal));
+            double bound = lowerBound > 0 ? cost / lowerBound : completed ? weight : Double.POSITIVE_INFINITY;
+            if (completed)
+                bound = Math.min(bound, weight);
+            return new Result(true, start, goal, cost, path, iterations, null, null, Math.max(bound, 1));
+        }
+    }
+
+    /**
+     * Run hash-distributed A* on several threads, see {@code ParallelAstar}.
+     * The iterations are the total number of nodes expanded by all threads.
+     *
+     * @param start   the start node
+     * @param goal    the goal node
+     * @param threads the number of worker threads
+     */
+    public Result searchParallelAstar(Node start, Node goal, int threads) {
+        startTimeNanos.set(System.nanoTime());
+        ParallelAstar<Node>.Outcome outcome;
+        try {
+            outcome = new ParallelAstar<>(graph).search(start, goal, threads);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while searching", e);
+        }
+        int iterations = (int) Math.min(outcome.totalExpansions(), Integer.MAX_VALUE);
+        return new Result(outcome.success, start, goal, outcome.cost, outcome.path, iterations);
+    }
+
+    /**
+     * Run iterative-deepening A* for finding the shortest path.
+     * This is a depth-first search that gives up on paths whose estimated cost
+     * (cost so far plus guessed cost to the goal) exceeds a threshold.
+     * The threshold starts at the guessed cost of the start node,
+     * and is raised to the smallest estimate that exceeded it until the goal is found.
+     * So the memory use is linear in the length of the path,
+     * but nodes are visited again in every iteration.
+     * Paths never go through the same node twice.
+     * If the guessed cost of the start is infinite, the goal is taken to be unreachable at once.
+     * Warning: if the goal is unreachable, the search only ends when every loopless path from the start
+     * has been tried. In an infinite graph it never ends, and in a large finite one, such as a 4x4 puzzle
+     * whose start has the wrong parity, it practically never does.
+     *
+     * @param start      the start node
+     * @param goal       the goal node
+     * @param tableSize  the number of nodes to remember in a transposition table
+     *                   that prunes nodes already reached more cheaply in the same iteration (0 for none)
+     */
+    public Result searchIDAstar(Node start, Node goal, int tableSize) {
+        startTimeNanos.set(System.nanoTime());
+        IDAstar search = new IDAstar(goal, tableSize);
+        List<Double> thresholds = new ArrayList<>();
+        double threshold = graph.guessCost(start, goal);
+        // An infinite guess means that the goal can't be reached, and a depth-first search
+        // with an infinite threshold would have no bound at all.
+        if (threshold == Double.POSITIVE_INFINITY)
+            return new Result(false, start, goal, -1, null, 0, thresholds);
+        while (true) {
+            thresholds.add(threshold);
+            if (search.table != null)
+                search.table.clear();
+            double next = search.visit(start, 0, threshold);
+            if (search.found)
+                return new Result(true, start, goal, search.cost, new LinkedList<>(search.path), search.iterations(), thresholds);
+            if (next == Double.POSITIVE_INFINITY)
+                return new Result(false, start, goal, -1, null, search.iterations(), thresholds);
+            threshold = next;
+        }
+    }
+
+    /**
+     * The state of a run of {@code searchIDAstar}: the current path and some counters.
+     */
+    private class IDAstar {
+        final Node goal;
+        final ArrayList<DirectedEdge<Node>> path = new ArrayList<>();
+        final Set<Node> onPath = new HashSet<>();    // the nodes of the current path
+        final Map<Node, Double> table;     // the cheapest cost to each node in this iteration, or null
+        long visited = 0;
+        boolean found = false;
+        double cost = -1;
+
+        IDAstar(Node goal, int tableSize) {
+            this.goal = goal;
+            this.table = tableSize <= 0 ? null : new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Node, Double> eldest) {
+                    return size() > tableSize;
                 }
+            };
+        }
+
+        int iterations() {
+            return (int) Math.min(visited, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Searches depth-first from {@code node}, reached with cost {@code costToHere}.
+         * @return the smallest estimated cost that exceeded the threshold
+         */
+        double visit(Node node, double costToHere, double threshold) {
+            double estimatedCost = costToHere + graph.guessCost(node, goal);
+            if (estimatedCost > threshold)
+                return estimatedCost;
+            visited++;
+            if (node.equals(goal)) {
+                found = true;
+                cost = costToHere;
+                return estimatedCost;
             }
+            if (table != null) {
+                Double seen = table.get(node);
+                if (seen != null && seen <= costToHere)
+                    return Double.POSITIVE_INFINITY;
+                table.put(node, costToHere);
+            }
+
+            double next = Double.POSITIVE_INFINITY;
+            onPath.add(node);
+            for (DirectedEdge<Node> edge : graph.outgoingEdges(node)) {
+                // Never go back to a node on the path, which also covers undoing the previous move.
+                if (onPath.contains(edge.to()))
+                    continue;
+                path.add(edge);
+                double t = visit(edge.to(), costToHere + edge.weight(), threshold);
+                if (found)
+                    return t;
+                path.remove(path.size() - 1);
+                next = Math.min(next, t);
+            }
+            onPath.remove(node);
+            return next;
+        }
+    }
+
+    /**
+     * Run Jump Point Search, a faster variant of A* for uniform-cost grids.
+     * The resulting path contains every point, not just the jump points.
+     *
+     * @param start       the start node
+     * @param goal        the goal node
+     * @param precompute  true for JPS+, which precomputes the jump distances of the grid
+     * @throws IllegalArgumentException if the graph is not a GridGraph
+     */
+    @SuppressWarnings("unchecked")
+    public Result searchJumpPoints(Node start, Node goal, boolean precompute) {
+        startTimeNanos.set(System.nanoTime());
+        if (!(graph instanceof GridGraph))
+            throw new IllegalArgumentException("jump point search only works on a GridGraph");
+        JumpPointSearch.Path found = JumpPointSearch.of((GridGraph) graph, precompute).search((Point) start, (Point) goal);
+        if (found.points == null)
+            return new Result(false, start, goal, -1, null, found.expansions);
+
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        double cost = 0;
+        for (int i = 1; i < found.points.size(); i++) {
+            Point from = found.points.get(i - 1), to = found.points.get(i);
+            DirectedEdge<Point> edge = new DirectedEdge<>(from, to, to.subtract(from).euclideanNorm());
+            path.add((DirectedEdge<Node>) (DirectedEdge<?>) edge);
+            cost += edge.weight();
         }
-        return new Result(false, start, goal, -1, null, iterations);
+        return new Result(true, start, goal, cost, path, found.expansions);
+    }
+
+    /**
+     * Run hierarchical path-finding A* (HPA*) on a GridGraph, see {@code HierarchicalGrid}.
+     * The abstraction of the grid is built by the first search, and kept up to date when the grid changes.
+     * The paths are not always optimal, so the result has an infinite suboptimality bound.
+     *
+     * @param start the start node
+     * @param goal  the goal node
+     * @throws IllegalArgumentException if the graph is not a GridGraph
+     */
+    @SuppressWarnings("unchecked")
+    public Result searchHierarchical(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
+        if (!(graph instanceof GridGraph))
+            throw new IllegalArgumentException("hierarchical search only works on a GridGraph");
+        HierarchicalGrid.Path found = HierarchicalGrid.of((GridGraph) graph).search((Point) start, (Point) goal);
+        List<Point> points = found.points();
+        if (points == null)
+            return new Result(false, start, goal, -1, null, found.expansions);
+
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        double cost = 0;
+        for (int i = 1; i < points.size(); i++) {
+            Point from = points.get(i - 1), to = points.get(i);
+            DirectedEdge<Point> edge = new DirectedEdge<>(from, to, to.subtract(from).euclideanNorm());
+            path.add((DirectedEdge<Node>) (DirectedEdge<?>) edge);
+            cost += edge.weight();
+        }
+        return new Result(true, start, goal, cost, path, Math.max(found.expansions, 1), null, null, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Run a breadth-first search of an NPuzzle that keeps the visited states outside the heap, see {@code CompactPuzzleSearch}.
+     * The iterations are the number of states removed from the queue.
+     *
+     * @param start the start node
+     * @param goal  the goal node
+     * @throws IllegalArgumentException if the graph is not an NPuzzle with N <= 4
+     */
+    @SuppressWarnings("unchecked")
+    public Result searchCompact(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
+        if (!(graph instanceof NPuzzle))
+            throw new IllegalArgumentException("compact search only works on an NPuzzle");
+        CompactPuzzleSearch.Outcome found = new CompactPuzzleSearch((NPuzzle) graph).search((NPuzzle.State) start, (NPuzzle.State) goal);
+        int iterations = (int) Math.min(Math.max(found.expansions, 1), Integer.MAX_VALUE);
+        if (found.states == null)
+            return new Result(false, start, goal, -1, null, iterations);
+
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        for (int i = 1; i < found.states.size(); i++) {
+            DirectedEdge<NPuzzle.State> edge = new DirectedEdge<>(found.states.get(i - 1), found.states.get(i), 1);
+            path.add((DirectedEdge<Node>) (DirectedEdge<?>) edge);
+        }
+        return new Result(true, start, goal, path.size(), path, iterations);
+    }
+
+    /**
+     * Run a bidirectional, direction-optimizing breadth-first search, see {@code DirectionOptimizingBFS}.
+     * The first call builds an indexed copy of the graph, which must be able to enumerate its nodes
+     * and must not be modified afterwards.
+     * The iterations are the number of nodes reached from both ends.
+     *
+     * @param start the start node
+     * @param goal  the goal node
+     * @throws IllegalArgumentException if some edge does not have weight 1
+     */
+    public Result searchBFS(Node start, Node goal) {
+        startTimeNanos.set(System.nanoTime());
+        DirectionOptimizingBFS<Node> engine = bfs;
+        if (engine == null)
+            bfs = engine = new DirectionOptimizingBFS<>(graph);
+        DirectionOptimizingBFS<Node>.Path found = engine.search(start, goal);
+        if (found.nodes == null)
+            return new Result(false, start, goal, -1, null, found.visited);
+
+        LinkedList<DirectedEdge<Node>> path = new LinkedList<>();
+        for (int i = 1; i < found.nodes.size(); i++)
+            path.add(new DirectedEdge<>(found.nodes.get(i - 1), found.nodes.get(i), 1));
+        return new Result(true, start, goal, path.size(), path, found.visited);
+    }
+
+    /**
+     * Find the {@code k} shortest loopless paths with Yen's algorithm, see {@code KShortestPaths}.
+     * The first call builds the reverse of the graph, which must be able to enumerate its nodes.
+     * It is built again after the graph has been modified (see {@code DirectedGraph.modifications}).
+     * The iterations of each result are those of the search that found it,
+     * and the elapsed time of every result is the time to find all of them.
+     *
+     * @param start the start node
+     * @param goal  the goal node
+     * @param k     the number of paths
+     * @return the paths in order of increasing cost, fewer than {@code k} if there are not that many
+     */
+    public List<Result> searchKShortest(Node start, Node goal, int k) {
+        startTimeNanos.set(System.nanoTime());
+        KShortestPaths<Node> paths = kShortest;
+        if (paths == null || paths.isStale())
+            kShortest = paths = new KShortestPaths<>(graph);
+        List<Result> results = new ArrayList<>();
+        for (KShortestPaths<Node>.Route route : paths.search(start, goal, k))
+            results.add(new Result(true, start, goal, route.cost, route.path, route.iterations));
+        return results;
     }
 
     /**
@@ -158,7 +746,7 @@ public class PathFinder<Node> {
         LinkedList<DirectedEdge<Node>> edges = new LinkedList<>();
 
         while (entry.backPointer != null) {
-            edges.addFirst(entry.lastEdge);
+            edges.addFirst(new DirectedEdge<>(entry.backPointer.node, entry.node, entry.lastWeight));
             entry = entry.backPointer;
         }
 
@@ -171,7 +759,8 @@ public class PathFinder<Node> {
     private class PQEntry {
         public final Node node;
         public final double costToHere;
-        public final DirectedEdge<Node> lastEdge;  // null for starting entry
+        public final double estimatedCost;         // costToHere plus the guessed cost to the goal
+        public final double lastWeight;            // the weight of the edge from the back pointer, 0 for starting entry
         public final PQEntry backPointer;          // null for starting entry
 
         /***************************************************
@@ -180,10 +769,15 @@ public class PathFinder<Node> {
          * For example, to add new fields or constructors. *
          **************************************************/
 
-        PQEntry(Node node, double costToHere, DirectedEdge<Node> lastEdge, PQEntry backPointer) {
+        PQEntry(Node node, double costToHere, double lastWeight, PQEntry backPointer) {
+            this(node, costToHere, costToHere, lastWeight, backPointer);
+        }
+
+        PQEntry(Node node, double costToHere, double estimatedCost, double lastWeight, PQEntry backPointer) {
             this.node = node;
             this.costToHere = costToHere;
-            this.lastEdge = lastEdge;
+            this.estimatedCost = estimatedCost;
+            this.lastWeight = lastWeight;
             this.backPointer = backPointer;
         }
     }
@@ -199,15 +793,36 @@ public class PathFinder<Node> {
         public final List<DirectedEdge<Node>> path;
         public final int iterations;
         public final double elapsedTime;
+        public final List<Double> thresholds;    // the thresholds of iterative deepening searches, otherwise null
+        public final SearchMetrics metrics;      // detailed measurements, only the time and iterations for some algorithms
+        public final double bound;               // the path costs at most this times the optimal cost (1 for optimal searches)
 
         public Result(boolean success, Node start, Node goal, double cost, List<DirectedEdge<Node>> path, int iterations) {
+            this(success, start, goal, cost, path, iterations, null);
+        }
+
+        public Result(boolean success, Node start, Node goal, double cost, List<DirectedEdge<Node>> path, int iterations, List<Double> thresholds) {
+            this(success, start, goal, cost, path, iterations, thresholds, null);
+        }
+
+        public Result(boolean success, Node start, Node goal, double cost, List<DirectedEdge<Node>> path, int iterations, List<Double> thresholds,
+                      SearchMetrics metrics) {
+            this(success, start, goal, cost, path, iterations, thresholds, metrics, 1);
+        }
+
+        public Result(boolean success, Node start, Node goal, double cost, List<DirectedEdge<Node>> path, int iterations, List<Double> thresholds,
+                      SearchMetrics metrics, double bound) {
+            long elapsedNanos = System.nanoTime() - startTimeNanos.get();
             this.success = success;
             this.start = start;
             this.goal = goal;
             this.cost = cost;
             this.path = path;
             this.iterations = iterations;
-            this.elapsedTime = (System.currentTimeMillis() - startTimeMillis) / 1000.0;
+            this.elapsedTime = elapsedNanos / 1e9;
+            this.thresholds = thresholds;
+            this.metrics = metrics != null ? metrics : new SearchMetrics(elapsedNanos, iterations, 0, 0, 0, 0, null);
+            this.bound = bound;
         }
 
         private String formatPathPart(boolean withWeight, boolean suffix, int i, int j) {
@@ -222,9 +837,17 @@ public class PathFinder<Node> {
             if (iterations <= 0)
                 w.println("ERROR: You have to iterate over at least the starting node!");
             w.println("Loop iterations: " + iterations);
+            if (thresholds != null)
+                w.println("Thresholds (" + thresholds.size() + " iterations): " + thresholds.stream()
+                        .map(DirectedEdge.DECIMAL_FORMAT::format)
+                        .collect(Collectors.joining(", ")));
             w.println("Elapsed time: " + elapsedTime + "s");
             if (success) {
                 w.println("Cost of path from " + start + " to " + goal + ": " + DirectedEdge.DECIMAL_FORMAT.format(cost));
+                if (bound == Double.POSITIVE_INFINITY)
+                    w.println("Suboptimality bound: none");
+                else if (bound != 1)
+                    w.println("Suboptimality bound: " + DirectedEdge.DECIMAL_FORMAT.format(bound));
                 if (path == null)
                     w.println("WARNING: you have not implemented extractPath!");
                 else {
@@ -0,0 +1,238 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A long-running path finder that keeps several graphs in memory,
+ * and answers queries from other programs over a local TCP socket.
+ *
+ * Each client connection is served by its own thread: a virtual thread if the Java version has them
+ * (21 or later), otherwise a thread from a cached pool. The loaded graphs are never modified,
+ * so all threads can search them at the same time, with one shared PathFinder per graph.
+ *
+ * The protocol is line-based, with tab-separated fields, and every request gets one JSON line back:
+ * - "QUERY TAB graph TAB algorithm TAB start TAB goal" runs a search, and answers like {@code BatchPathFinder} in JSON mode,
+ * - "STATS" answers the number of queries, the throughput and latency percentiles of each graph,
+ * - "QUIT" closes the connection.
+ * For example: {@code printf 'QUERY\tse\tastar\tLund\tKiruna\n' | nc localhost 7474}
+ */
+public class PathFinderServer {
+
+    public static final int DEFAULT_PORT = 7474;
+
+    // The number of recent searches per graph that the latency percentiles are computed from.
+    private static final int RECENT_SEARCHES = 10000;
+
+    private final TreeMap<String, ServedGraph<?>> graphs = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * A loaded graph, with its path finder and statistics.
+     */
+    private static class ServedGraph<Node> {
+        final String name;
+        final String graphType;
+        final DirectedGraph<Node> graph;
+        final Set<Node> nodes;
+        final PathFinder<Node> finder;
+        final double loadSeconds;
+        final LongAdder queries = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        private final SearchMetrics[] recent = new SearchMetrics[RECENT_SEARCHES];   // a ring buffer
+        private long recorded = 0;
+
+        ServedGraph(String name, String graphType, DirectedGraph<Node> graph, double loadSeconds) {
+            this.name = name;
+            this.graphType = graphType;
+            this.graph = graph;
+            this.nodes = graph.nodes();
+            this.finder = new PathFinder<>(graph);
+            this.loadSeconds = loadSeconds;
+            try {
+                finder.useReachabilityIndex(ReachabilityIndex.of(graph));
+            } catch (UnsupportedOperationException ignored) {
+                // The NPuzzle can't enumerate its nodes.
+            }
+        }
+
+        /**
+         * Runs one query, and formats its result (or the reason it failed) as a JSON line.
+         */
+        String query(int index, String algorithm, String start, String goal) {
+            queries.increment();
+            try {
+                Node startNode = graph.parseNode(start), goalNode = graph.parseNode(goal);
+                for (Node node : List.of(startNode, goalNode))
+                    if (!nodes.contains(node))
+                        throw new IllegalArgumentException("node " + node + " does not belong to the graph");
+                PathFinder<Node>.Result result = finder.search(algorithm, startNode, goalNode);
+                record(result.metrics);
+                return BatchPathFinder.format(index, start, goal, result, null, true);
+            } catch (RuntimeException e) {
+                errors.increment();
+                return BatchPathFinder.format(index, start, goal, null, BatchPathFinder.describe(e), true);
+            }
+        }
+
+        private synchronized void record(SearchMetrics metrics) {
+            recent[(int) (recorded++ % RECENT_SEARCHES)] = metrics;
+        }
+
+        private synchronized List<SearchMetrics> recent() {
+            return new ArrayList<>(Arrays.asList(recent).subList(0, (int) Math.min(recorded, RECENT_SEARCHES)));
+        }
+
+        /**
+         * @return the statistics of this graph as a JSON object
+         */
+        String stats(double uptimeSeconds) {
+            List<SearchMetrics> searches = recent();
+            StringBuilder b = new StringBuilder();
+            b.append("{\"name\":").append(BatchPathFinder.json(name))
+             .append(",\"type\":").append(BatchPathFinder.json(graphType))
+             .append(String.format(Locale.ROOT, ",\"loadSeconds\":%.3f", loadSeconds))
+             .append(",\"queries\":").append(queries.sum())
+             .append(",\"errors\":").append(errors.sum())
+             .append(String.format(Locale.ROOT, ",\"queriesPerSecond\":%.3f", queries.sum() / uptimeSeconds));
+            if (!searches.isEmpty()) {
+                SearchMetrics.Summary summary = SearchMetrics.summarize(searches);
+                b.append(String.format(Locale.ROOT, ",\"latencyMs\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}",
+                        summary.elapsedNanos(50) / 1e6, summary.elapsedNanos(90) / 1e6,
+                        summary.elapsedNanos(99) / 1e6, summary.elapsedNanos(100) / 1e6));
+            }
+            return b.append("}").toString();
+        }
+    }
+
+    /**
+     * Loads a graph and makes it available under the given name.
+     * Adjacency graphs are loaded with landmarks, which A* uses and the other algorithms ignore.
+     * @throws IllegalArgumentException if the name is already taken or the graph type is unknown
+     */
+    public void load(String name, String graphType, String filePath) throws IOException {
+        if (graphs.containsKey(name))
+            throw new IllegalArgumentException("there is already a graph called " + name);
+        long startTime = System.nanoTime();
+        DirectedGraph<?> graph = RunPathFinder.loadGraph(graphType, filePath, "astar");
+        ServedGraph<?> served = new ServedGraph<>(name, graphType, graph, (System.nanoTime() - startTime) / 1e9);
+        synchronized (graphs) {
+            graphs.put(name, served);
+        }
+    }
+
+    /**
+     * Answers one request line.
+     * @param index  the number of the request on its connection
+     */
+    String handle(int index, String line) {
+        String[] fields = line.split("\t", -1);
+        String command = fields[0].trim();
+        if (command.equalsIgnoreCase("QUERY")) {
+            if (fields.length != 5)
+                return "{\"index\":" + index + ",\"error\":\"a query should be QUERY TAB graph TAB algorithm TAB start TAB goal\"}";
+            ServedGraph<?> served;
+            synchronized (graphs) {
+                served = graphs.get(fields[1].trim());
+            }
+            if (served == null)
+                return "{\"index\":" + index + ",\"error\":" + BatchPathFinder.json("unknown graph " + fields[1].trim()) + "}";
+            return served.query(index, fields[2].trim(), fields[3].trim(), fields[4].trim());
+        }
+        if (command.equalsIgnoreCase("STATS")) {
+            double uptime = (System.nanoTime() - startNanos) / 1e9;
+            List<String> stats = new ArrayList<>();
+            synchronized (graphs) {
+                for (ServedGraph<?> served : graphs.values())
+                    stats.add(served.stats(uptime));
+            }
+            return String.format(Locale.ROOT, "{\"uptimeSeconds\":%.3f,\"graphs\":[%s]}", uptime, String.join(",", stats));
+        }
+        return "{\"index\":" + index + ",\"error\":" + BatchPathFinder.json("unknown command " + command) + "}";
+    }
+
+    /**
+     * Serves one client until it sends QUIT or closes the connection.
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            int index = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank())
+                    continue;
+                if (line.trim().equalsIgnoreCase("QUIT"))
+                    break;
+                out.println(handle(index++, line));
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the process is stopped.
+     */
+    public void run(int port) throws IOException {
+        ExecutorService executor;
+        try {
+            executor = BatchPathFinder.newExecutor("virtual");
+        } catch (IllegalArgumentException e) {
+            executor = Executors.newCachedThreadPool();
+        }
+        try (ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket socket = server.accept();
+                executor.execute(() -> serve(socket));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Usage: java PathFinderServer [port] name=graphtype:graph...
+     * For example: java PathFinderServer se=AdjacencyGraph:graphs/AdjacencyGraph/citygraph-SE.txt words=WordLadder:graphs/WordLadder/english-crossword.txt
+     * The statistics are printed to standard error when the server is stopped.
+     */
+    public static void main(String[] args) throws IOException {
+        int first = args.length > 0 && args[0].matches("\\d+") ? 1 : 0;
+        if (args.length <= first) {
+            System.err.println("Usage: java PathFinderServer [port] name=graphtype:graph...");
+            System.err.println("  where graphtype = AdjacencyGraph | MappedGraph | WordLadder | NPuzzle | NPuzzle-PDB | GridGraph");
+            System.exit(1);
+        }
+        int port = first == 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+        PathFinderServer server = new PathFinderServer();
+        for (int i = first; i < args.length; i++) {
+            int equals = args[i].indexOf('='), colon = args[i].indexOf(':', equals + 1);
+            if (equals <= 0 || colon < 0)
+                throw new IllegalArgumentException("a graph should be given as name=graphtype:graph, not " + args[i]);
+            String name = args[i].substring(0, equals);
+            server.load(name, args[i].substring(equals + 1, colon), args[i].substring(colon + 1));
+            System.err.printf("Loaded %s in %.3fs%n", name, server.graphs.get(name).loadSeconds);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(server.handle(0, "STATS"))));
+        server.run(port);
+    }
+
+}
@@ -0,0 +1,314 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Additive disjoint pattern databases for the N-puzzle (Korf and Felner).
+ *
+ * The tiles are split into disjoint groups. For each group, we precompute
+ * the least number of moves of the group's tiles needed to bring them to their
+ * goal cells, for every placement of the group's tiles, ignoring the other tiles.
+ * Since every move moves a tile of exactly one group, the sum over all groups
+ * is an admissible guess, and much better than the Manhattan distance.
+ *
+ * The tables are computed by a backward breadth-first search from the goal,
+ * where moving the empty tile past a tile outside the group is free.
+ * A placement of k tiles on the n cells is stored at its index in a perfect hash,
+ * so each table is a {@code byte[]} of size n! / (n-k)!.
+ * The tables are saved to disk and memory-mapped on later runs.
+ */
+public class PatternDatabase {
+
+    private static final byte UNKNOWN = -1;
+
+    private final NPuzzle puzzle;
+    private final int N;
+    private final int cells;
+    private final int[][] groups;
+    private final int[][] neighbours;      // the cells next to each cell
+    private final ByteBuffer[] tables;
+
+    /**
+     * Loads the pattern databases for the given groups of tiles from {@code directory},
+     * building and saving any that are missing.
+     * @param puzzle     the puzzle
+     * @param groups     disjoint groups of tiles (not including the empty tile 0)
+     * @param directory  where to store the tables
+     */
+    public PatternDatabase(NPuzzle puzzle, int[][] groups, Path directory) throws IOException {
+        this.puzzle = puzzle;
+        this.N = puzzle.size();
+        this.cells = N * N;
+        this.groups = groups;
+        this.neighbours = IntStream.range(0, cells).mapToObj(this::neighbours).toArray(int[][]::new);
+        boolean[] used = new boolean[cells];
+        for (int[] group : groups)
+            for (int tile : group) {
+                if (tile <= 0 || tile >= cells || used[tile])
+                    throw new IllegalArgumentException("tile groups must be disjoint and not contain the empty tile");
+                used[tile] = true;
+            }
+
+        Files.createDirectories(directory);
+        tables = new ByteBuffer[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            Path file = directory.resolve(fileName(groups[g]));
+            if (!Files.exists(file) || Files.size(file) != tableSize(groups[g].length))
+                Files.write(file, build(groups[g]));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                tables[g] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+
+    /**
+     * Loads the pattern databases with the default grouping of tiles for the puzzle size.
+     * @param puzzle     the puzzle
+     * @param directory  where to store the tables
+     */
+    public PatternDatabase(NPuzzle puzzle, Path directory) throws IOException {
+        this(puzzle, defaultGroups(puzzle.size()), directory);
+    }
+
+    /**
+     * @return the default grouping of tiles:
+     * 6-6-3 for the 15-puzzle, and groups of at most 4 (or 3 for N = 6) tiles in reading order otherwise
+     */
+    public static int[][] defaultGroups(int N) {
+        if (N == 4)
+            return new int[][] {{1, 5, 6, 9, 10, 13}, {7, 8, 11, 12, 14, 15}, {2, 3, 4}};
+        int size = N <= 5 ? 4 : 3;
+        List<int[]> groups = new ArrayList<>();
+        for (int first = 1; first < N * N; first += size)
+            groups.add(IntStream.range(first, Math.min(first + size, N * N)).toArray());
+        return groups.toArray(new int[0][]);
+    }
+
+    private String fileName(int[] group) {
+        return "npuzzle-" + N + "-" + Arrays.stream(group).mapToObj(String::valueOf).collect(Collectors.joining("_")) + ".pdb";
+    }
+
+    /**
+     * @return the number of placements of k tiles on the cells: n! / (n-k)!
+     */
+    private long tableSize(int k) {
+        long size = 1;
+        for (int i = 0; i < k; i++)
+            size *= cells - i;
+        return size;
+    }
+
+    /**
+     * @return the index of the placement of tiles at the given cells
+     *
+     * The index is written in a mixed radix, where digit i is the number of
+     * cells before {@code positions[i]} that are not used by earlier tiles.
+     */
+    private int rank(int[] positions, int k) {
+        long used = 0;
+        int index = 0;
+        for (int i = 0; i < k; i++) {
+            int p = positions[i];
+            index = index * (cells - i) + p - Long.bitCount(used & ((1L << p) - 1));
+            used |= 1L << p;
+        }
+        return index;
+    }
+
+    /**
+     * Stores the placement with the given index in {@code positions}.
+     */
+    private void unrank(int index, int[] positions, int k) {
+        int[] digits = new int[k];
+        for (int i = k - 1; i >= 0; i--) {
+            digits[i] = index % (cells - i);
+            index /= cells - i;
+        }
+        long used = 0;
+        for (int i = 0; i < k; i++) {
+            int p = -1;
+            for (int skip = digits[i]; skip >= 0; skip--)
+                do p++; while ((used & (1L << p)) != 0);
+            positions[i] = p;
+            used |= 1L << p;
+        }
+    }
+
+    /**
+     * Computes the table for one group by a 0-1 breadth-first search backwards from the goal,
+     * over placements of the group's tiles together with the empty tile.
+     */
+    private byte[] build(int[] group) {
+        int k = group.length;
+        long size = tableSize(k + 1);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("pattern group " + Arrays.toString(group) + " is too large");
+        byte[] distance = new byte[(int) size];
+        Arrays.fill(distance, UNKNOWN);
+
+        int[] positions = new int[k + 1];
+        for (int i = 0; i < k; i++)
+            positions[i] = puzzle.goalCell(group[i]);
+        positions[k] = puzzle.goalCell(0);
+        int startIndex = rank(positions, k + 1);
+        distance[startIndex] = 0;
+
+        IntList current = new IntList(), next = new IntList();
+        current.add(startIndex);
+        for (int depth = 0; !current.isEmpty(); depth++) {
+            // The current list grows while we go through it, because free moves stay in the same layer.
+            for (int c = 0; c < current.size; c++) {
+                int index = current.values[c];
+                if (distance[index] != depth)
+                    continue;   // reached by free moves after it was added to the list
+                unrank(index, positions, k + 1);
+                int blank = positions[k];
+                for (int target : neighbours[blank]) {
+                    int tile = -1;
+                    for (int i = 0; i < k; i++)
+                        if (positions[i] == target)
+                            tile = i;
+                    positions[k] = target;
+                    if (tile >= 0)
+                        positions[tile] = blank;
+                    int neighbour = rank(positions, k + 1);
+                    if (tile < 0) {
+                        if (distance[neighbour] == UNKNOWN || distance[neighbour] == depth + 1) {
+                            distance[neighbour] = (byte) depth;
+                            current.add(neighbour);
+                        }
+                    } else if (distance[neighbour] == UNKNOWN) {
+                        distance[neighbour] = (byte) (depth + 1);
+                        next.add(neighbour);
+                    }
+                    if (tile >= 0)
+                        positions[tile] = target;
+                    positions[k] = blank;
+                }
+            }
+            IntList swap = current;
+            current = next;
+            next = swap;
+            next.size = 0;
+        }
+
+        // The empty tile is the last digit, so we take the minimum over its cells.
+        int blanks = cells - k;
+        byte[] table = new byte[(int) (size / blanks)];
+        for (int i = 0; i < table.length; i++) {
+            int best = Integer.MAX_VALUE;
+            for (int j = 0; j < blanks; j++) {
+                int d = distance[i * blanks + j];
+                if (d >= 0)
+                    best = Math.min(best, d);
+            }
+            table[i] = (byte) best;
+        }
+        return table;
+    }
+
+    /**
+     * @return the cells next to the given one
+     */
+    private int[] neighbours(int cell) {
+        int x = cell % N, y = cell / N;
+        int[] result = new int[4];
+        int count = 0;
+        if (x < N - 1) result[count++] = cell + 1;
+        if (x > 0)     result[count++] = cell - 1;
+        if (y < N - 1) result[count++] = cell + N;
+        if (y > 0)     result[count++] = cell - N;
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param  s  a puzzle state
+     * @return the guessed number of moves from {@code s} to the traditional goal state
+     */
+    public int guessCost(NPuzzle.State s) {
+        int[] cellOfTile = new int[cells];
+        for (int cell = 0; cell < cells; cell++)
+            cellOfTile[s.tileAt(cell)] = cell;
+
+        int[] positions = new int[cells];
+        int cost = 0;
+        for (int g = 0; g < groups.length; g++) {
+            int[] group = groups[g];
+            for (int i = 0; i < group.length; i++)
+                positions[i] = cellOfTile[group[i]];
+            cost += tables[g].get(rank(positions, group.length));
+        }
+        return cost;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static class IntList {
+        int[] values = new int[1024];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * Compares A* with the Manhattan distance and with pattern databases
+     * on random solvable instances, made by random walks from the goal state.
+     *
+     * Usage: java PatternDatabase N [instances] [walk length] [directory]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java PatternDatabase N [instances] [walk length] [directory]");
+            System.exit(1);
+        }
+        int N = Integer.parseInt(args[0]);
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int walkLength = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+        Path directory = Paths.get(args.length > 3 ? args[3] : "pdb");
+
+        NPuzzle manhattan = new NPuzzle(N);
+        NPuzzle withDatabase = new NPuzzle(N);
+        long startTime = System.currentTimeMillis();
+        withDatabase.usePatternDatabase(new PatternDatabase(withDatabase, directory));
+        System.out.println("Loading pattern databases: " + (System.currentTimeMillis() - startTime) / 1000.0 + "s");
+
+        Random random = new Random(0);
+        long total0 = 0, total1 = 0;
+        for (int i = 0; i < instances; i++) {
+            NPuzzle.State start = manhattan.goalState();
+            for (int step = 0; step < walkLength; step++) {
+                List<DirectedEdge<NPuzzle.State>> edges = manhattan.outgoingEdges(start);
+                start = edges.get(random.nextInt(edges.size())).to();
+            }
+            PathFinder<NPuzzle.State>.Result r0 = new PathFinder<>(manhattan).searchAstar(start, manhattan.goalState());
+            PathFinder<NPuzzle.State>.Result r1 = new PathFinder<>(withDatabase).searchAstar(start, withDatabase.goalState());
+            if (r0.cost != r1.cost)
+                throw new IllegalStateException("different costs for " + start + ": " + r0.cost + " and " + r1.cost);
+            System.out.printf("%s  cost %2.0f  Manhattan %9d  pattern databases %8d%n", start, r0.cost, r0.iterations, r1.iterations);
+            total0 += r0.iterations;
+            total1 += r1.iterations;
+        }
+        System.out.printf("Total loop iterations: Manhattan %d, pattern databases %d (%.1fx fewer)%n",
+                total0, total1, (double) total0 / total1);
+    }
+
+}
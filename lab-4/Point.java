@@ -14,7 +14,7 @@ public class Point {
     }
 
     public int manhattanNorm() {
-        return Math.abs(x) + Math.abs(x);
+        return Math.abs(x) + Math.abs(y);
     }
 
     public double euclideanNorm() {
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * A precomputed index that rejects queries whose goal cannot be reached from the start in constant time,
+ * so that the searches don't have to exhaust the reachable part of the graph first.
+ *
+ * For a GridGraph, whose edges go both ways, it labels the connected components of the passable cells.
+ * For other finite graphs, it labels the strongly connected components (with an iterative version of Tarjan's algorithm),
+ * numbered in topological order of the component graph, and also the weakly connected components.
+ * A node can only reach nodes in the same weak component, and in strong components with at least as high a number.
+ * Otherwise the index can't tell, and the query has to be searched.
+ *
+ * The graph must not get new edges after the index is built, except for a GridGraph:
+ * the index of a grid is not used any more once a cell is blocked or unblocked.
+ */
+public class ReachabilityIndex<Node> {
+
+    private final ToIntFunction<Node> ids;    // the number of a node, or -1 if it is not indexed
+    private final int[] component;            // the (strong) component of each node, -1 for blocked grid cells
+    private final int[] weak;                 // the weak component of each node, or null if the edges go both ways
+    private final int numComponents;
+    private final BooleanSupplier stale;      // true if the graph has changed since the index was built
+
+    private ReachabilityIndex(ToIntFunction<Node> ids, int[] component, int[] weak, BooleanSupplier stale) {
+        this.ids = ids;
+        this.component = component;
+        this.weak = weak;
+        this.numComponents = Arrays.stream(component).max().orElse(-1) + 1;
+        this.stale = stale;
+    }
+
+    /**
+     * Builds the index of a grid, or of a graph that can enumerate its nodes.
+     * @param graph  the graph
+     * @throws UnsupportedOperationException if the graph cannot enumerate its nodes (like NPuzzle)
+     */
+    @SuppressWarnings("unchecked")
+    public static <Node> ReachabilityIndex<Node> of(DirectedGraph<Node> graph) {
+        if (graph instanceof GridGraph)
+            return (ReachabilityIndex<Node>) ofGrid((GridGraph) graph);
+        IndexedGraph<Node> indexed = IndexedGraph.of(graph);
+        return new ReachabilityIndex<>(indexed::id, strongComponents(indexed), weakComponents(indexed), () -> false);
+    }
+
+    private static ReachabilityIndex<Point> ofGrid(GridGraph grid) {
+        long modifications = grid.modifications();
+        ToIntFunction<Point> ids = p -> p.x >= 0 && p.y >= 0 && p.x < grid.width() && p.y < grid.height() ? grid.index(p.x, p.y) : -1;
+        return new ReachabilityIndex<>(ids, gridComponents(grid), null, () -> grid.modifications() != modifications);
+    }
+
+    /**
+     * @return the connected component of every cell of the grid, -1 for blocked cells
+     */
+    static int[] gridComponents(GridGraph grid) {
+        int[] component = new int[grid.width() * grid.height()];
+        Arrays.fill(component, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int count = 0;
+        for (int cell = 0; cell < component.length; cell++) {
+            if (!grid.passable(cell) || component[cell] >= 0)
+                continue;
+            int label = count++;
+            component[cell] = label;
+            queue.add(cell);
+            while (!queue.isEmpty())
+                grid.forEachNeighbour(queue.remove(), (next, weight) -> {
+                    if (component[next] < 0) {
+                        component[next] = label;
+                        queue.add(next);
+                    }
+                });
+        }
+        return component;
+    }
+
+    /**
+     * Tarjan's algorithm, with an explicit stack instead of recursion, so that long paths don't overflow the call stack.
+     * @return the strong component of every node, numbered so that edges never go to a lower number
+     */
+    static int[] strongComponents(IndexedGraph<?> graph) {
+        int n = graph.numNodes();
+        int[] index = new int[n];        // the visiting order of each node, starting from 1 (0 for unvisited)
+        int[] low = new int[n];          // the lowest index reachable through the DFS subtree and one more edge
+        int[] component = new int[n];
+        Arrays.fill(component, -1);
+        int[] stack = new int[n];        // the visited nodes without a component yet
+        int stackSize = 0;
+        int[] callStack = new int[n];    // the DFS path
+        int[] nextEdge = new int[n];     // the next edge to look at for each node on the DFS path
+        int visited = 0, found = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0)
+                continue;
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = low[root] = ++visited;
+            nextEdge[root] = graph.firstEdge(root);
+            stack[stackSize++] = root;
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (nextEdge[v] < graph.endEdge(v)) {
+                    int w = graph.target(nextEdge[v]++);
+                    if (index[w] == 0) {
+                        index[w] = low[w] = ++visited;
+                        nextEdge[w] = graph.firstEdge(w);
+                        stack[stackSize++] = w;
+                        callStack[depth++] = w;
+                    } else if (component[w] < 0)
+                        low[v] = Math.min(low[v], index[w]);
+                    continue;
+                }
+                // All edges of v are done: v is the root of a component, or passes its low value to its parent.
+                depth--;
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        component[w] = found;
+                    } while (w != v);
+                    found++;
+                }
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        // Tarjan's algorithm finds the components in reverse topological order.
+        for (int v = 0; v < n; v++)
+            component[v] = found - 1 - component[v];
+        return component;
+    }
+
+    /**
+     * @return the weak component of every node, the connected components when the edge directions are ignored
+     */
+    static int[] weakComponents(IndexedGraph<?> graph) {
+        int n = graph.numNodes();
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++)
+            parent[v] = v;
+        for (int v = 0; v < n; v++)
+            for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+                int a = find(parent, v), b = find(parent, graph.target(e));
+                if (a != b)
+                    parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        // Number the components 0, 1, ... in the order of their smallest node.
+        int[] weak = new int[n];
+        int count = 0;
+        for (int v = 0; v < n; v++)
+            weak[v] = find(parent, v) == v ? count++ : weak[find(parent, v)];
+        return weak;
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    /**
+     * @return the number of (strong) components
+     */
+    public int numComponents() {
+        return numComponents;
+    }
+
+    /**
+     * @return the (strong) component of node {@code n}, or -1 if it is not indexed (or a blocked grid cell)
+     */
+    public int component(Node n) {
+        int id = ids.applyAsInt(n);
+        return id < 0 ? -1 : component[id];
+    }
+
+    /**
+     * @return false if there is certainly no path from {@code start} to {@code goal},
+     * true if there is one or the index can't tell
+     */
+    public boolean mayReach(Node start, Node goal) {
+        if (start.equals(goal) || stale.getAsBoolean())
+            return true;
+        int s = ids.applyAsInt(start), t = ids.applyAsInt(goal);
+        if (s < 0 || t < 0 || component[s] < 0 || component[t] < 0)
+            return true;
+        if (weak == null)
+            return component[s] == component[t];
+        return weak[s] == weak[t] && component[s] <= component[t];
+    }
+
+    /**
+     * Builds the index of a graph, and compares UCS on random queries with and without it.
+     *
+     * Usage: java ReachabilityIndex AdjacencyGraph|WordLadder|GridGraph graphfile [queries]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ReachabilityIndex AdjacencyGraph|WordLadder|GridGraph graphfile [queries]");
+            System.exit(1);
+        }
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        run(RunPathFinder.loadGraph(args[0], args[1], "ucs"), queries);
+    }
+
+    private static <Node> void run(DirectedGraph<Node> graph, int queries) {
+        long startTime = System.nanoTime();
+        ReachabilityIndex<Node> index = ReachabilityIndex.of(graph);
+        System.out.printf("%d components, built in %.3f ms%n", index.numComponents(), (System.nanoTime() - startTime) / 1e6);
+
+        List<Node> nodes = new ArrayList<>(graph.nodes());
+        Collections.shuffle(nodes, new Random(0));
+        PathFinder<Node> plain = new PathFinder<>(graph), indexed = new PathFinder<>(graph);
+        indexed.useReachabilityIndex(index);
+        long plainNanos = 0, indexedNanos = 0;
+        int rejected = 0, unreachable = 0;
+        Random random = new Random(0);
+        for (int q = 0; q < queries; q++) {
+            Node start = nodes.get(random.nextInt(nodes.size())), goal = nodes.get(random.nextInt(nodes.size()));
+            startTime = System.nanoTime();
+            PathFinder<Node>.Result expected = plain.search("ucs", start, goal);
+            plainNanos += System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            PathFinder<Node>.Result result = indexed.search("ucs", start, goal);
+            indexedNanos += System.nanoTime() - startTime;
+            if (result.success != expected.success)
+                throw new IllegalStateException("the index is wrong about the query from " + start + " to " + goal);
+            if (!index.mayReach(start, goal))
+                rejected++;
+            if (!expected.success)
+                unreachable++;
+        }
+        System.out.printf("%d queries, %d unreachable, %d rejected by the index: UCS %.3f ms without the index, %.3f ms with it%n",
+                queries, unreachable, rejected, plainNanos / 1e6, indexedNanos / 1e6);
+    }
+
+}
@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -7,6 +8,7 @@ import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -24,7 +26,7 @@ public class RunPathFinder {
         /* // If you don't want to specify arguments on the command-line, just uncomment this block.
         if (args.length == 0)
             args = new String[] {
-                "random",         // Algorithm = random | ucs | astar
+                "random",         // Algorithm = random | ucs | astar | wastar | arastar | hdastar | idastar | jps | jps+ | hpa | compact | bfs
                 "AdjacencyGraph", // Graphtype = AdjacencyGraph | WordLadder | NPuzzle | GridGraph
                 "graphs/AdjacencyGraph/citygraph-VGregion.txt",  // Graph
                 "Vara",           // Start node
@@ -44,49 +46,80 @@ public class RunPathFinder {
                 queries.add(new String[]{it.next(), it.next()});
         } catch (NoSuchElementException ignored) {
             System.err.println("Usage: java RunPathFinder algorithm graphtype graph [optional: start goal]");
-            System.err.println("  where algorithm = random | ucs | astar");
-            System.err.println("        graphtype = AdjacencyGraph | WordLadder | NPuzzle | GridGraph");
+            System.err.println("  where algorithm = random | ucs | astar | wastar | arastar | hdastar | idastar | jps | jps+ | hpa | compact | bfs (jps and hpa only for GridGraph, compact only for NPuzzle, bfs only for unit weights)");
+            System.err.println("        graphtype = AdjacencyGraph | MappedGraph | WordLadder | NPuzzle | NPuzzle-PDB | GridGraph");
             System.exit(1);
             return;
         }
 
-        TreeMap<String, RunnableIO> byGraphType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        byGraphType.put("AdjacencyGraph", () -> {
-            DirectedGraph<String> graph = new AdjacencyGraph(filePath);
-            runGraphSearches(graph, algorithm, queries, result -> System.out.println(result.toString(true)));
-        });
-        byGraphType.put("WordLadder", () -> {
-            DirectedGraph<String> graph = new WordLadder(filePath);
-            runGraphSearches(graph, algorithm, queries, System.out::println);
-        });
-        byGraphType.put("NPuzzle", () -> {
-            DirectedGraph<NPuzzle.State> graph = new NPuzzle(Integer.parseInt(filePath));
-            runGraphSearches(graph, algorithm, queries, System.out::println);
-        });
-        byGraphType.put("GridGraph", () -> {
-            GridGraph graph = new GridGraph(filePath);
-            runGraphSearches(graph, algorithm, queries, result -> {
+        runSearches(loadGraph(graphType, filePath, algorithm), graphType, algorithm, queries);
+    }
+
+    /**
+     * Runs the searches on a graph loaded by {@code loadGraph}, and prints the results in the way that suits the graph type:
+     * weighted graphs show the weight of every edge, and small grids show the path on the map.
+     */
+    private static <Node> void runSearches(DirectedGraph<Node> graph, String graphType, String algorithm, List<String[]> queries) {
+        Consumer<PathFinder<Node>.Result> print = System.out::println;
+        if (graphType.equalsIgnoreCase("AdjacencyGraph") || graphType.equalsIgnoreCase("MappedGraph"))
+            print = result -> System.out.println(result.toString(true));
+        else if (graphType.equalsIgnoreCase("GridGraph")) {
+            GridGraph grid = (GridGraph) graph;
+            print = result -> {
                 System.out.println(result);
-                if (result.success && graph.width() < 250 && graph.height() < 250) {
-                    List<Point> pathNodes = Stream.concat(Stream.of(result.start), result.path.stream().map(DirectedEdge<Point>::to)).collect(Collectors.toList());
-                    System.out.println(graph.showGrid(pathNodes));
+                if (result.success && grid.width() < 250 && grid.height() < 250) {
+                    List<Point> pathNodes = Stream.concat(Stream.of(result.start), result.path.stream().map(DirectedEdge::to))
+                            .map(Point.class::cast).collect(Collectors.toList());
+                    System.out.println(grid.showGrid(pathNodes));
                 }
-            });
+            };
+        }
+        runGraphSearches(graph, algorithm, queries, print);
+    }
+
+    @FunctionalInterface
+    interface SupplierIO<T> {
+        T get() throws IOException;
+    }
+
+    // The algorithms of PathFinder.search that are guided by guessed costs.
+    private static final Set<String> heuristicAlgorithms = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    static {
+        heuristicAlgorithms.addAll(List.of("astar", "wastar", "arastar", "hdastar", "idastar"));
+    }
+
+    /**
+     * Loads a graph given its type and file path (or size, for the NPuzzle),
+     * as on the command-line.
+     * Adjacency and mapped graphs get landmarks if the algorithm uses guessed costs (A* and its variants),
+     * since they have no other guesses.
+     * The result is safe to share between threads, as long as nobody modifies it.
+     * @throws IllegalArgumentException if the graph type is unknown
+     */
+    public static DirectedGraph<?> loadGraph(String graphType, String filePath, String algorithm) throws IOException {
+        TreeMap<String, SupplierIO<DirectedGraph<?>>> byGraphType = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        byGraphType.put("AdjacencyGraph", () -> {
+            AdjacencyGraph graph = new AdjacencyGraph(filePath);
+            return heuristicAlgorithms.contains(algorithm) ? new LandmarkGraph<>(graph) : graph;
+        });
+        byGraphType.put("MappedGraph", () -> {
+            MappedGraph graph = new MappedGraph(filePath);
+            return heuristicAlgorithms.contains(algorithm) ? new LandmarkGraph<>(graph) : graph;
         });
-        byGraphType.put("GridGraph-NoGrid", () -> {
-            GridGraph graph = new GridGraph(filePath);
-            runGraphSearches(graph, algorithm, queries, System.out::println);
+        byGraphType.put("WordLadder", () -> new WordLadder(filePath));
+        byGraphType.put("NPuzzle", () -> new NPuzzle(Integer.parseInt(filePath)));
+        byGraphType.put("NPuzzle-PDB", () -> {
+            NPuzzle graph = new NPuzzle(Integer.parseInt(filePath));
+            graph.usePatternDatabase(new PatternDatabase(graph, Paths.get("pdb")));
+            return graph;
         });
+        byGraphType.put("GridGraph", () -> new GridGraph(filePath));
+        byGraphType.put("GridGraph-NoGrid", () -> new GridGraph(filePath));
 
-        RunnableIO action = byGraphType.get(graphType);
-        if (action == null)
+        SupplierIO<DirectedGraph<?>> loader = byGraphType.get(graphType);
+        if (loader == null)
             throw new IllegalArgumentException("unknown graph type " + graphType);
-        action.run();
-    }
-
-    @FunctionalInterface
-    interface RunnableIO {
-        void run() throws IOException;
+        return loader.get();
     }
 
     /**
@@ -148,4 +181,4 @@ public class RunPathFinder {
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A cache of uniform-cost searches, keyed by the graph and the start node.
+ *
+ * Uniform-cost search settles nodes in order of their distance from the start,
+ * and everything it has settled stays valid as long as the graph is unchanged.
+ * So when many queries share a few start nodes (for example depots), a PathFinder
+ * using this cache saves the settled nodes and the frontier of each search.
+ * A query for a goal that is already settled is answered immediately,
+ * and any other query continues the saved search where it stopped.
+ *
+ * The cache is bounded by the total number of saved search entries
+ * (settled nodes plus frontier entries), and evicts the least recently used searches.
+ * It can be shared between path finders and threads.
+ * A saved search remembers the modification count of its graph (see {@code DirectedGraph.modifications}),
+ * and is replaced by a new search once the graph has changed.
+ */
+public class SearchCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 4_000_000;
+
+    /**
+     * A saved search, which knows how many entries it holds.
+     */
+    interface Entry {
+        long size();
+    }
+
+    /**
+     * A cache key: the graph (compared by identity) and the start node.
+     */
+    private static final class Key {
+        final DirectedGraph<?> graph;
+        final Object start;
+
+        Key(DirectedGraph<?> graph, Object start) {
+            this.graph = graph;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).graph == graph && ((Key) o).start.equals(start);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(graph) + start.hashCode();
+        }
+    }
+
+    private final long maxEntries;
+    private final LinkedHashMap<Key, Entry> searches = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Long> sizes = new LinkedHashMap<>();
+    private long totalSize = 0;
+
+    private long hits = 0;        // the goal was already settled
+    private long resumes = 0;     // a saved search was continued
+    private long misses = 0;      // a new search was started
+    private long evictions = 0;
+
+    /**
+     * Creates a cache with the default bound.
+     */
+    public SearchCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries  the largest total number of settled nodes and frontier entries to keep
+     */
+    public SearchCache(long maxEntries) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("the cache size must be positive");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the saved search from {@code start} in {@code graph}, or null if there is none
+     */
+    synchronized Entry get(DirectedGraph<?> graph, Object start) {
+        return searches.get(new Key(graph, start));
+    }
+
+    /**
+     * Saves a new search, and evicts old searches if the cache becomes too large.
+     */
+    synchronized void put(DirectedGraph<?> graph, Object start, Entry search) {
+        Key key = new Key(graph, start);
+        Entry old = searches.put(key, search);
+        if (old != null)
+            totalSize -= sizes.remove(key);
+        sizes.put(key, 0L);
+        updated(graph, start, search);
+    }
+
+    /**
+     * Records that a saved search has grown, and evicts the least recently used searches if needed.
+     * A search that alone is larger than the cache is evicted too.
+     */
+    synchronized void updated(DirectedGraph<?> graph, Object start, Entry search) {
+        Key key = new Key(graph, start);
+        if (searches.get(key) != search)
+            return;     // evicted in the meantime
+        long size = search.size();
+        totalSize += size - sizes.put(key, size);
+
+        Iterator<Map.Entry<Key, Entry>> it = searches.entrySet().iterator();
+        while (totalSize > maxEntries && it.hasNext()) {
+            Key eldest = it.next().getKey();
+            it.remove();
+            totalSize -= sizes.remove(eldest);
+            evictions++;
+        }
+    }
+
+    synchronized void recordHit() {
+        hits++;
+    }
+
+    synchronized void recordResume() {
+        resumes++;
+    }
+
+    synchronized void recordMiss() {
+        misses++;
+    }
+
+    /**
+     * Removes all saved searches, but keeps the counters.
+     */
+    public synchronized void clear() {
+        searches.clear();
+        sizes.clear();
+        totalSize = 0;
+    }
+
+    /**
+     * @return the fraction of queries that were answered without searching
+     */
+    public synchronized double hitRate() {
+        long queries = hits + resumes + misses;
+        return queries == 0 ? 0 : (double) hits / queries;
+    }
+
+    /**
+     * @return the fraction of queries that could use a saved search (either directly or by continuing it)
+     */
+    public synchronized double reuseRate() {
+        long queries = hits + resumes + misses;
+        return queries == 0 ? 0 : (double) (hits + resumes) / queries;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long resumes() {
+        return resumes;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of saved searches
+     */
+    public synchronized int size() {
+        return searches.size();
+    }
+
+    /**
+     * @return the total number of saved entries
+     */
+    public synchronized long totalSize() {
+        return totalSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Search cache: %d searches, %d entries (max %d); %d hits, %d resumed, %d misses, %d evictions; hit rate %.1f%%, reuse rate %.1f%%",
+                searches.size(), totalSize, maxEntries, hits, resumes, misses, evictions, 100 * hitRate(), 100 * reuseRate());
+    }
+
+    /**
+     * Runs random queries from a few depots in an adjacency graph,
+     * with and without the cache, and compares the running times.
+     *
+     * Usage: java SearchCache graphfile [depots] [queries] [max entries]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java SearchCache graphfile [depots] [queries] [max entries]");
+            System.exit(1);
+        }
+        int numDepots = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        long maxEntries = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MAX_ENTRIES;
+
+        AdjacencyGraph graph = new AdjacencyGraph(args[0]);
+        List<String> nodes = new ArrayList<>(graph.nodes());
+        Collections.sort(nodes);
+        Random random = new Random(0);
+        List<String> depots = new ArrayList<>();
+        for (int i = 0; i < numDepots; i++)
+            depots.add(nodes.get(random.nextInt(nodes.size())));
+        String[][] pairs = new String[queries][];
+        for (int q = 0; q < queries; q++)
+            pairs[q] = new String[] {depots.get(random.nextInt(depots.size())), nodes.get(random.nextInt(nodes.size()))};
+
+        PathFinder<String> plain = new PathFinder<>(graph);
+        long startTime = System.nanoTime();
+        double[] costs = new double[queries];
+        for (int q = 0; q < queries; q++)
+            costs[q] = plain.searchUCS(pairs[q][0], pairs[q][1]).cost;
+        double plainTime = (System.nanoTime() - startTime) / 1e9;
+
+        SearchCache cache = new SearchCache(maxEntries);
+        PathFinder<String> cached = new PathFinder<>(graph);
+        cached.useCache(cache);
+        startTime = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            double cost = cached.searchUCS(pairs[q][0], pairs[q][1]).cost;
+            if (Math.abs(cost - costs[q]) > 1e-6)
+                throw new IllegalStateException("cached search from " + pairs[q][0] + " to " + pairs[q][1] + " costs " + cost + ", not " + costs[q]);
+        }
+        double cachedTime = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("%d queries from %d depots: %.3fs without the cache, %.3fs with it%n", queries, numDepots, plainTime, cachedTime);
+        System.out.println(cache);
+    }
+
+}
@@ -0,0 +1,176 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Detailed measurements of one search, recorded by PathFinder.
+ *
+ * The counters that a search algorithm does not keep track of are 0,
+ * and {@code phaseNanos} is null if the phases were not timed.
+ * All times are in nanoseconds, measured with {@code System.nanoTime}.
+ */
+public class SearchMetrics {
+
+    public static final String[] PHASES = {"setup", "search", "path extraction"};
+
+    public final long elapsedNanos;
+    public final long expanded;       // nodes removed from the open set and expanded
+    public final long relaxed;        // edges looked at during expansions
+    public final long stalePops;      // entries removed from the open set for nodes that were already visited
+    public final long peakOpen;       // the largest size of the open set
+    public final long visited;        // the size of the visited set at the end
+    public final long[] phaseNanos;   // the time of each of the PHASES, or null
+
+    public SearchMetrics(long elapsedNanos, long expanded, long relaxed, long stalePops, long peakOpen, long visited, long[] phaseNanos) {
+        this.elapsedNanos = elapsedNanos;
+        this.expanded = expanded;
+        this.relaxed = relaxed;
+        this.stalePops = stalePops;
+        this.peakOpen = peakOpen;
+        this.visited = visited;
+        this.phaseNanos = phaseNanos;
+    }
+
+    /**
+     * Counts events during a search and times its phases.
+     * A recorder belongs to a single search, so it is not thread-safe.
+     */
+    static class Recorder {
+        private final long startNanos = System.nanoTime();
+        private long searchNanos = -1, pathNanos = -1;
+        long expanded, relaxed, stalePops, peakOpen;
+
+        /**
+         * Marks the end of the setup phase.
+         */
+        void searchStarted() {
+            searchNanos = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of the search phase.
+         */
+        void pathStarted() {
+            pathNanos = System.nanoTime();
+        }
+
+        void open(int size) {
+            if (size > peakOpen)
+                peakOpen = size;
+        }
+
+        /**
+         * @param visited  the size of the visited set
+         * @return the metrics of the finished search
+         */
+        SearchMetrics finish(long visited) {
+            long endNanos = System.nanoTime();
+            long[] phases = null;
+            if (searchNanos >= 0) {
+                long searchEnd = pathNanos >= 0 ? pathNanos : endNanos;
+                phases = new long[] {searchNanos - startNanos, searchEnd - searchNanos, endNanos - searchEnd};
+            }
+            return new SearchMetrics(endNanos - startNanos, expanded, relaxed, stalePops, peakOpen, visited, phases);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("time %.3fms, expanded %d, relaxed %d, stale pops %d, peak open %d, visited %d",
+                elapsedNanos / 1e6, expanded, relaxed, stalePops, peakOpen, visited));
+        if (phaseNanos != null)
+            for (int i = 0; i < PHASES.length; i++)
+                b.append(String.format(", %s %.3fms", PHASES[i], phaseNanos[i] / 1e6));
+        return b.toString();
+    }
+
+    /**
+     * @return percentile summaries of a batch of metrics
+     */
+    public static Summary summarize(Collection<SearchMetrics> batch) {
+        return new Summary(batch);
+    }
+
+    /**
+     * Percentiles of the metrics of a batch of searches.
+     */
+    public static class Summary {
+        public static final double[] PERCENTILES = {50, 90, 99, 100};
+        private static final String[] NAMES = {"time (ms)", "expanded", "relaxed", "stale pops", "peak open", "visited"};
+
+        public final int count;
+        private final long[][] sorted;    // the sorted values of each metric in NAMES
+
+        Summary(Collection<SearchMetrics> batch) {
+            count = batch.size();
+            sorted = new long[NAMES.length][];
+            for (int i = 0; i < NAMES.length; i++) {
+                int metric = i;
+                sorted[i] = batch.stream().mapToLong(m -> value(m, metric)).toArray();
+                Arrays.sort(sorted[i]);
+            }
+        }
+
+        /**
+         * @return the value of the i:th metric in NAMES
+         */
+        private static long value(SearchMetrics m, int i) {
+            switch (i) {
+                case 0: return m.elapsedNanos;
+                case 1: return m.expanded;
+                case 2: return m.relaxed;
+                case 3: return m.stalePops;
+                case 4: return m.peakOpen;
+                default: return m.visited;
+            }
+        }
+
+        /**
+         * @return the given percentile (by the nearest-rank method) of the values, or 0 if there are none
+         */
+        private static long percentile(long[] values, double p) {
+            if (values.length == 0)
+                return 0;
+            int rank = (int) Math.ceil(p / 100 * values.length);
+            return values[Math.max(rank, 1) - 1];
+        }
+
+        public long elapsedNanos(double p) {
+            return percentile(sorted[0], p);
+        }
+
+        public long expanded(double p) {
+            return percentile(sorted[1], p);
+        }
+
+        public long relaxed(double p) {
+            return percentile(sorted[2], p);
+        }
+
+        @Override
+        public String toString() {
+            StringWriter buffer = new StringWriter();
+            PrintWriter w = new PrintWriter(buffer);
+            w.println("Metrics over " + count + " searches:");
+            w.printf("  %-12s", "");
+            for (double p : PERCENTILES)
+                w.printf("%14s", p == 100 ? "max" : "p" + (int) p);
+            w.println();
+            for (int i = 0; i < NAMES.length; i++) {
+                w.printf("  %-12s", NAMES[i]);
+                for (double p : PERCENTILES) {
+                    long value = percentile(sorted[i], p);
+                    if (i == 0)
+                        w.printf("%14.3f", value / 1e6);
+                    else
+                        w.printf("%14d", value);
+                }
+                w.println();
+            }
+            return buffer.toString();
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One-to-all and many-to-many shortest distances.
+ *
+ * PathFinder answers a single start-goal query and then throws its frontier away.
+ * This class instead runs Dijkstra's algorithm over the integer node numbers
+ * of an IndexedGraph, and returns the whole shortest-path tree as primitive arrays.
+ * A distance matrix is then one such search per source, run in parallel,
+ * where each search stops as soon as all targets are settled.
+ */
+public class ShortestPaths<Node> {
+
+    private final IndexedGraph<Node> graph;
+
+    /**
+     * A shortest-path tree from a source node.
+     * Nodes that were not settled have distance infinity and parent -1.
+     */
+    public static class Tree {
+        public final int source;
+        public final double[] distance;   // node number -> distance from the source
+        public final int[] parent;        // node number -> previous node on a shortest path, -1 for the source
+        public final int[] order;         // the settled node numbers, in the order they were settled
+
+        Tree(int source, double[] distance, int[] parent, int[] order) {
+            this.source = source;
+            this.distance = distance;
+            this.parent = parent;
+            this.order = order;
+        }
+
+        /**
+         * @return the node numbers on the shortest path from the source to {@code target},
+         * or null if the target was not reached
+         */
+        public int[] path(int target) {
+            if (distance[target] == Double.POSITIVE_INFINITY)
+                return null;
+            LinkedList<Integer> path = new LinkedList<>();
+            for (int v = target; v >= 0; v = parent[v])
+                path.addFirst(v);
+            return path.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @param graph  the graph, which must be able to enumerate its nodes
+     */
+    public ShortestPaths(DirectedGraph<Node> graph) {
+        this(IndexedGraph.of(graph));
+    }
+
+    /**
+     * @param graph  the graph in indexed form
+     */
+    public ShortestPaths(IndexedGraph<Node> graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @return the indexed graph, for translating between nodes and node numbers
+     */
+    public IndexedGraph<Node> graph() {
+        return graph;
+    }
+
+    /**
+     * @return the full shortest-path tree from the node with number {@code source}
+     */
+    public Tree tree(int source) {
+        return tree(source, null);
+    }
+
+    /**
+     * @return the shortest-path tree from {@code source}, stopping as soon as all targets are settled
+     * (or the full tree if {@code targets} is null)
+     */
+    public Tree tree(int source, int[] targets) {
+        int n = graph.numNodes();
+        double[] distance = new double[n];
+        int[] parent = new int[n];
+        int[] order = new int[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+
+        boolean[] isTarget = null;
+        int remaining = 0;
+        if (targets != null) {
+            isTarget = new boolean[n];
+            for (int target : targets)
+                if (!isTarget[target]) {
+                    isTarget[target] = true;
+                    remaining++;
+                }
+        }
+
+        IndexMinPQ pqueue = new IndexMinPQ(n);
+        distance[source] = 0;
+        pqueue.insertOrDecrease(source, 0);
+        int settled = 0;
+        while (!pqueue.isEmpty()) {
+            int v = pqueue.delMin();
+            order[settled++] = v;
+            if (isTarget != null && isTarget[v] && --remaining == 0)
+                break;
+            for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+                int w = graph.target(e);
+                double d = distance[v] + graph.weight(e);
+                if (d < distance[w]) {
+                    distance[w] = d;
+                    parent[w] = v;
+                    pqueue.insertOrDecrease(w, d);
+                }
+            }
+        }
+
+        // Nodes still in the queue have tentative distances, which we don't report.
+        while (!pqueue.isEmpty()) {
+            int v = pqueue.delMin();
+            distance[v] = Double.POSITIVE_INFINITY;
+            parent[v] = -1;
+        }
+        return new Tree(source, distance, parent, Arrays.copyOf(order, settled));
+    }
+
+    /**
+     * @return the shortest-path tree from the given node
+     */
+    public Tree tree(Node source) {
+        return tree(id(source));
+    }
+
+    /**
+     * Computes the distances from every source to every target,
+     * with one search per source, run in parallel.
+     * @return the matrix of distances, infinity if a target is unreachable
+     */
+    public double[][] distanceMatrix(List<Node> sources, List<Node> targets) {
+        int[] targetIds = targets.stream().mapToInt(this::id).toArray();
+        return sources.parallelStream().map(source -> {
+            Tree tree = tree(id(source), targetIds);
+            return Arrays.stream(targetIds).mapToDouble(t -> tree.distance[t]).toArray();
+        }).toArray(double[][]::new);
+    }
+
+    private int id(Node n) {
+        int id = graph.id(n);
+        if (id < 0)
+            throw new IllegalArgumentException("node " + n + " does not belong to the graph");
+        return id;
+    }
+
+    /**
+     * Computes a distance matrix between random nodes of an adjacency graph,
+     * and compares some of its entries and its running time with separate searches.
+     *
+     * Usage: java ShortestPaths graphfile [number of nodes]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java ShortestPaths graphfile [number of nodes]");
+            System.exit(1);
+        }
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        AdjacencyGraph graph = new AdjacencyGraph(args[0]);
+        ShortestPaths<String> shortestPaths = new ShortestPaths<>(graph);
+
+        List<String> nodes = new ArrayList<>(shortestPaths.graph().nodeList());
+        Collections.shuffle(nodes, new Random(0));
+        nodes = nodes.subList(0, Math.min(count, nodes.size()));
+
+        long startTime = System.nanoTime();
+        double[][] matrix = shortestPaths.distanceMatrix(nodes, nodes);
+        double matrixTime = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%d x %d distance matrix: %.3fs%n", nodes.size(), nodes.size(), matrixTime);
+
+        // Separate searches for the first row, to check the results and estimate the time for all of them.
+        PathFinder<String> finder = new PathFinder<>(graph);
+        startTime = System.nanoTime();
+        for (int j = 0; j < nodes.size(); j++) {
+            PathFinder<String>.Result result = finder.searchUCS(nodes.get(0), nodes.get(j));
+            double expected = result.success ? result.cost : Double.POSITIVE_INFINITY;
+            if (expected != matrix[0][j])
+                throw new IllegalStateException("distance from " + nodes.get(0) + " to " + nodes.get(j) + " is " + expected + ", not " + matrix[0][j]);
+        }
+        double rowTime = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("%d separate UCS searches (one row): %.3fs, so about %.1fs for the whole matrix%n",
+                nodes.size(), rowTime, rowTime * nodes.size());
+    }
+
+}
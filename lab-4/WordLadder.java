@@ -5,24 +5,192 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A graph that encodes word ladders.
  *
  * The class does not store the full graph in memory, just a dictionary of words.
- * The edges are then computed on demand.
+ * The edges are then computed on demand, using an index of substitution buckets:
+ * for every word and position, the word with that position replaced by a wildcard
+ * (for example "c*t" for "cat" and "cut") is a bucket containing all matching words.
+ * The neighbours of a word are the other words in its buckets.
  */
 public class WordLadder implements DirectedGraph<String> {
 
+    private static final char WILDCARD = '*';
+
     private final Set<String> dictionary;
     private final Set<Character> alphabet;
 
+    // The bucket index, built on demand and discarded whenever a word is added.
+    // It is read without locking, so that parallel searches don't wait for each other.
+    private volatile BucketIndex index;
+
+    /**
+     * The substitution-bucket index.
+     *
+     * Words and buckets are numbered, and buckets are stored as compact arrays of word numbers.
+     * Each character position of each word is a "slot", which belongs to one bucket.
+     * To find the bucket of a pattern without creating a string for it,
+     * we keep an open-addressing hash table of slots for each word length.
+     */
+    private static class BucketIndex {
+        final String[] words;                   // word number -> word, sorted by length
+        final Map<String, Integer> wordIds;     // word -> word number
+        final int[] firstSlot;                  // word number -> its first slot; the slots of a word are consecutive
+        final int[] slotHash;                   // slot -> hash of its pattern
+        final int[] slotWord;                   // slot -> word number
+        final int[] slotBucket;                 // slot -> bucket number
+        final int[][] tables;                   // word length -> hash table of slot numbers plus one (0 for empty)
+        final int[][] buckets;                  // bucket number -> numbers of the words in it
+
+        /**
+         * Builds the index, in parallel over the words and over the word lengths.
+         */
+        BucketIndex(Set<String> dictionary) {
+            words = dictionary.toArray(new String[0]);
+            Arrays.sort(words, Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+            wordIds = new HashMap<>(words.length * 2);
+            firstSlot = new int[words.length + 1];
+            for (int id = 0; id < words.length; id++) {
+                wordIds.put(words[id], id);
+                firstSlot[id + 1] = firstSlot[id] + words[id].length();
+            }
+
+            int numSlots = firstSlot[words.length];
+            slotHash = new int[numSlots];
+            slotWord = new int[numSlots];
+            slotBucket = new int[numSlots];
+            IntStream.range(0, words.length).parallel().forEach(id -> {
+                for (int i = 0; i < words[id].length(); i++) {
+                    slotHash[firstSlot[id] + i] = patternHash(words[id], i);
+                    slotWord[firstSlot[id] + i] = id;
+                }
+            });
+
+            // Patterns of different lengths never match, so each length gets its own table.
+            // The slots of each length are consecutive, because the words are sorted by length.
+            int maxLength = words.length == 0 ? 0 : words[words.length - 1].length();
+            int[] fromSlot = new int[maxLength + 2];     // the first slot of a word of at least the given length
+            for (int length = 0, id = 0; length <= maxLength + 1; length++) {
+                while (id < words.length && words[id].length() < length)
+                    id++;
+                fromSlot[length] = firstSlot[id];
+            }
+            tables = new int[maxLength + 1][];
+            int[] numBuckets = new int[maxLength + 2];
+            IntStream.rangeClosed(1, maxLength).parallel().forEach(length ->
+                numBuckets[length + 1] = fillTable(length, fromSlot[length], fromSlot[length + 1]));
+
+            // Make the bucket numbers of each length distinct.
+            for (int length = 1; length <= maxLength; length++)
+                numBuckets[length + 1] += numBuckets[length];
+            IntStream.rangeClosed(1, maxLength).parallel().forEach(length -> {
+                for (int slot = fromSlot[length]; slot < fromSlot[length + 1]; slot++)
+                    slotBucket[slot] += numBuckets[length];
+            });
+
+            // Fill the buckets, in increasing order of word numbers.
+            int[] sizes = new int[numBuckets[maxLength + 1]];
+            for (int bucket : slotBucket)
+                sizes[bucket]++;
+            buckets = new int[sizes.length][];
+            for (int bucket = 0; bucket < sizes.length; bucket++)
+                buckets[bucket] = new int[sizes[bucket]];
+            Arrays.fill(sizes, 0);
+            for (int slot = 0; slot < numSlots; slot++)
+                buckets[slotBucket[slot]][sizes[slotBucket[slot]]++] = slotWord[slot];
+        }
+
+        /**
+         * Builds the hash table for the slots {@code from} up to {@code to}, all of the given word length,
+         * and numbers their buckets from 0.
+         * @return the number of buckets
+         */
+        private int fillTable(int length, int from, int to) {
+            int[] table = new int[Integer.highestOneBit(Math.max(1, to - from)) * 4];
+            int numBuckets = 0;
+            for (int slot = from; slot < to; slot++) {
+                String word = words[slotWord[slot]];
+                int i = slot - firstSlot[slotWord[slot]];
+                int found = find(table, slotHash[slot], word, i);
+                if (table[found] == 0) {
+                    table[found] = slot + 1;
+                    slotBucket[slot] = numBuckets++;
+                } else
+                    slotBucket[slot] = slotBucket[table[found] - 1];
+            }
+            tables[length] = table;
+            return numBuckets;
+        }
+
+        /**
+         * @return the position in the table of a slot with the same pattern as position {@code i} of {@code word},
+         * or of the empty entry where it should be
+         */
+        private int find(int[] table, int hash, String word, int i) {
+            int mask = table.length - 1;
+            for (int pos = hash & mask; ; pos = (pos + 1) & mask) {
+                int entry = table[pos] - 1;
+                if (entry < 0)
+                    return pos;
+                int other = slotWord[entry];
+                if (slotHash[entry] == hash && entry - firstSlot[other] == i && samePattern(words[other], word, i))
+                    return pos;
+            }
+        }
+
+        /**
+         * @return the bucket of the pattern of position {@code i} of {@code word}, or -1 if there is none
+         */
+        int bucket(String word, int i) {
+            if (word.length() >= tables.length || tables[word.length()] == null)
+                return -1;
+            int[] table = tables[word.length()];
+            int entry = table[find(table, patternHash(word, i), word, i)] - 1;
+            return entry < 0 ? -1 : slotBucket[entry];
+        }
+
+        /**
+         * @return the bucket of position {@code i} of the word with number {@code id}
+         */
+        int bucket(int id, int i) {
+            return slotBucket[firstSlot[id] + i];
+        }
+
+        /**
+         * @return true if the words are equal except at position {@code i}
+         */
+        static boolean samePattern(String word1, String word2, int i) {
+            if (word1.length() != word2.length())
+                return false;
+            for (int k = 0; k < word1.length(); k++)
+                if (k != i && word1.charAt(k) != word2.charAt(k))
+                    return false;
+            return true;
+        }
+
+        /**
+         * @return the hash code of the pattern where position {@code i} of {@code word} is a wildcard
+         */
+        static int patternHash(String word, int i) {
+            int hash = i;
+            for (int k = 0; k < word.length(); k++)
+                hash = 31 * hash + (k == i ? WILDCARD : word.charAt(k));
+            // Spread the bits, since we use the lowest ones as table position.
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
     /**
      * Creates a new empty graph.
      */
     public WordLadder() {
         dictionary = new HashSet<>();
         alphabet = new HashSet<>();
+        index = null;
     }
 
     /**
@@ -31,14 +199,31 @@ public class WordLadder implements DirectedGraph<String> {
      * @param word  the word
      */
     public void addWord(String word) {
-        if (word.matches("\\p{L}+")) {
+        if (isWord(word)) {
             word = word.toLowerCase();
-            dictionary.add(word);
+            if (dictionary.add(word))
+                index = null;
             for (char c : word.toCharArray())
                 alphabet.add(c);
         }
     }
 
+    /**
+     * @return true if the word is non-empty and only contains letters
+     * (the same as {@code word.matches("\\p{L}+")}, but much faster)
+     */
+    private static boolean isWord(String word) {
+        if (word.isEmpty())
+            return false;
+        for (int i = 0; i < word.length(); ) {
+            int c = word.codePointAt(i);
+            if (!Character.isLetter(c))
+                return false;
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
     /**
      * Creates a new word ladder graph from the given dictionary file.
      * The file should contain one word per line, except lines starting with "#".
@@ -50,6 +235,18 @@ public class WordLadder implements DirectedGraph<String> {
             .filter(line -> !line.startsWith("#"))
             .map(String::trim)
             .forEach(this::addWord);
+        index();
+    }
+
+    /**
+     * @return the bucket index, building it if necessary
+     */
+    private BucketIndex index() {
+        // Words are not added during searches, so at worst two threads build the same index.
+        BucketIndex index = this.index;
+        if (index == null)
+            this.index = index = new BucketIndex(dictionary);
+        return index;
     }
 
     @Override
@@ -63,32 +260,37 @@ public class WordLadder implements DirectedGraph<String> {
      */
     @Override
     public List<DirectedEdge<String>> outgoingEdges(String w) {
-        LinkedList<DirectedEdge<String>> edges = new LinkedList<>();
-        char[] charArr;
-        String edge;
-        for(int i = 0; i < w.length(); i++){
-            charArr = w.toCharArray();
-            for (Character c : alphabet){
-                charArr[i] = c;
-                edge = new String(charArr);
-                if(dictionary.contains(edge)){
-                    if(!w.equals(edge)){
-                        edges.add(new DirectedEdge<>(w, edge));
-                    }
-                }
-            }
-        }
+        List<DirectedEdge<String>> edges = new ArrayList<>();
+        forEachOutgoing(w, (u, weight) -> edges.add(new DirectedEdge<>(w, u, weight)));
         return edges;
     }
 
+    @Override
+    public void forEachOutgoing(String w, EdgeConsumer<String> action) {
+        BucketIndex index = index();
+        Integer id = index.wordIds.get(w);
+        for (int i = 0; i < w.length(); i++) {
+            // Words in the dictionary know their buckets, other words have to look them up.
+            int bucket = id != null ? index.bucket(id, i) : index.bucket(w, i);
+            if (bucket < 0)
+                continue;
+            for (int other : index.buckets[bucket])
+                if (id == null ? !index.words[other].equals(w) : other != id)
+                    action.accept(index.words[other], 1);
+        }
+    }
+
     /**
      * @param  w  one node/word
      * @param  u  another node/word
      * @return the guessed best cost for getting from {@code w} to {@code u}
-     * (the number of differing character positions)
+     * (the number of differing character positions, or infinity if the lengths differ)
      */
     @Override
     public double guessCost(String w, String u) {
+        // Every move keeps the length of the word.
+        if (w.length() != u.length())
+            return Double.POSITIVE_INFINITY;
         double cost = 0;
         char[] wChar = w.toCharArray();
         char[] uChar = u.toCharArray();
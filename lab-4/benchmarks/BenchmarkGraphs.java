@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The graphs and seeded query sets shared by the benchmarks.
+ *
+ * A graph is given as "graphtype:path" (or "NPuzzle:size"), with the same
+ * graph types as RunPathFinder, and is loaded with {@code RunPathFinder.loadGraph}.
+ * Everything random is seeded, so every run measures the same nodes and queries.
+ */
+public class BenchmarkGraphs {
+
+    public static final long SEED = 495;
+
+    /**
+     * The graphs to benchmark, as JMH parameter values.
+     */
+    public static final String ADJACENCY_SE = "AdjacencyGraph:graphs/AdjacencyGraph/citygraph-SE.txt";
+    public static final String ADJACENCY_EU = "AdjacencyGraph:graphs/AdjacencyGraph/citygraph-EU.txt";
+    public static final String WIKIPEDIA = "AdjacencyGraph:graphs/AdjacencyGraph/wikipedia-graph.txt";
+    public static final String GRID = "GridGraph:graphs/GridGraph/AR0011SR.map";
+    public static final String WORDS = "WordLadder:graphs/WordLadder/english-crossword.txt";
+    public static final String NPUZZLE_3 = "NPuzzle:3";
+    public static final String NPUZZLE_4 = "NPuzzle:4";
+
+    /**
+     * Loads a graph.
+     * @param spec       "graphtype:path"
+     * @param algorithm  the algorithm that will be used (A* adds landmarks to adjacency graphs)
+     */
+    @SuppressWarnings("unchecked")
+    public static DirectedGraph<Object> load(String spec, String algorithm) throws IOException {
+        int colon = spec.indexOf(':');
+        if (colon < 0)
+            throw new IllegalArgumentException("graph " + spec + " should be on the form graphtype:path");
+        return (DirectedGraph<Object>) RunPathFinder.loadGraph(spec.substring(0, colon), spec.substring(colon + 1), algorithm);
+    }
+
+    /**
+     * @return {@code count} nodes of the graph, chosen at random with the given seed.
+     * For the NPuzzle, which cannot list its nodes, these are the ends of random walks from the goal state.
+     */
+    public static List<Object> sampleNodes(DirectedGraph<Object> graph, int count, long seed) {
+        Random random = new Random(seed);
+        List<Object> result = new ArrayList<>();
+        NPuzzle puzzle = asPuzzle(graph);
+        if (puzzle != null) {
+            for (int i = 0; i < count; i++)
+                result.add(randomWalk(graph, puzzle.goalState(), 100, random));
+            return result;
+        }
+        // Sort the nodes, so that the sample doesn't depend on the iteration order of a hash set.
+        List<Object> nodes = new ArrayList<>(graph.nodes());
+        nodes.sort(Comparator.comparing(Object::toString));
+        for (int i = 0; i < count; i++)
+            result.add(nodes.get(random.nextInt(nodes.size())));
+        return result;
+    }
+
+    /**
+     * @return {@code count} queries {start, goal}, chosen at random with the given seed.
+     * For the NPuzzle, the start is the goal state shuffled by a random walk of {@code walkLength} moves,
+     * so that the queries are solvable and not too hard for UCS.
+     */
+    public static List<Object[]> sampleQueries(DirectedGraph<Object> graph, int count, int walkLength, long seed) {
+        List<Object[]> queries = new ArrayList<>();
+        NPuzzle puzzle = asPuzzle(graph);
+        if (puzzle != null) {
+            Random random = new Random(seed);
+            Object goal = puzzle.goalState();
+            for (int i = 0; i < count; i++)
+                queries.add(new Object[] {randomWalk(graph, goal, walkLength, random), goal});
+            return queries;
+        }
+        List<Object> nodes = sampleNodes(graph, 2 * count, seed);
+        for (int i = 0; i < count; i++)
+            queries.add(new Object[] {nodes.get(2 * i), nodes.get(2 * i + 1)});
+        return queries;
+    }
+
+    private static NPuzzle asPuzzle(DirectedGraph<?> graph) {
+        return graph instanceof NPuzzle ? (NPuzzle) graph : null;
+    }
+
+    private static Object randomWalk(DirectedGraph<Object> graph, Object node, int length, Random random) {
+        for (int step = 0; step < length; step++) {
+            List<DirectedEdge<Object>> edges = graph.outgoingEdges(node);
+            node = edges.get(random.nextInt(edges.size())).to();
+        }
+        return node;
+    }
+
+}
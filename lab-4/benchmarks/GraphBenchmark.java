@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks for loading the graphs, and for the throughput of {@code outgoingEdges} and {@code forEachOutgoing}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    private static final int NODES = 1024;
+
+    @Param({BenchmarkGraphs.ADJACENCY_EU, BenchmarkGraphs.WIKIPEDIA, BenchmarkGraphs.GRID,
+            BenchmarkGraphs.WORDS, BenchmarkGraphs.NPUZZLE_3, BenchmarkGraphs.NPUZZLE_4})
+    public String graph;
+
+    private DirectedGraph<Object> loaded;
+    private List<Object> nodes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        loaded = BenchmarkGraphs.load(graph, "ucs");
+        nodes = BenchmarkGraphs.sampleNodes(loaded, NODES, BenchmarkGraphs.SEED);
+    }
+
+    /**
+     * Loads the graph from its file (this includes building the WordLadder index).
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public DirectedGraph<Object> load() throws IOException {
+        return BenchmarkGraphs.load(graph, "ucs");
+    }
+
+    /**
+     * Gets the outgoing edges of the sampled nodes, and looks at every target.
+     * The result is the time per node.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public void outgoingEdges(Blackhole blackhole) {
+        for (Object node : nodes)
+            for (DirectedEdge<Object> edge : loaded.outgoingEdges(node))
+                blackhole.consume(edge.to());
+    }
+
+    /**
+     * The same as {@link #outgoingEdges}, but with the push-style {@code forEachOutgoing},
+     * which doesn't allocate a list or edges.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public void forEachOutgoing(Blackhole blackhole) {
+        for (Object node : nodes)
+            loaded.forEachOutgoing(node, (next, weight) -> blackhole.consume(next));
+    }
+
+    /**
+     * Runs the benchmarks with allocation profiling.
+     * Run from the lab-4 directory, so that the graph files are found.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GraphBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks for the latency of UCS and A* queries, on a fixed seeded set of queries per graph.
+ * Each invocation runs the whole query set, so the result is the average time per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int QUERIES = 32;
+
+    @Param({BenchmarkGraphs.ADJACENCY_SE, BenchmarkGraphs.ADJACENCY_EU, BenchmarkGraphs.WIKIPEDIA,
+            BenchmarkGraphs.GRID, BenchmarkGraphs.WORDS, BenchmarkGraphs.NPUZZLE_3, BenchmarkGraphs.NPUZZLE_4})
+    public String graph;
+
+    @Param({"ucs", "astar"})
+    public String algorithm;
+
+    private PathFinder<Object> finder;
+    private List<Object[]> queries;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        DirectedGraph<Object> loaded = BenchmarkGraphs.load(graph, algorithm);
+        finder = new PathFinder<>(loaded);
+        // 4x4 puzzles get shorter random walks, so that UCS finishes in reasonable time.
+        int walkLength = graph.equals(BenchmarkGraphs.NPUZZLE_4) ? 20 : 40;
+        queries = BenchmarkGraphs.sampleQueries(loaded, QUERIES, walkLength, BenchmarkGraphs.SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void query(Blackhole blackhole) {
+        for (Object[] query : queries)
+            blackhole.consume(finder.search(algorithm, query[0], query[1]));
+    }
+
+    /**
+     * Runs the benchmarks with allocation profiling.
+     * Run from the lab-4 directory, so that the graph files are found.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}